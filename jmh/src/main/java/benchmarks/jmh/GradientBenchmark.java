@@ -0,0 +1,74 @@
+package benchmarks.jmh;
+import models.ArgbImage;
+import models.CTViewer;
+import models.View;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures full quality gradient shaded renders of each view, with and without interpolating the hits,
+ * and with normals either precomputed or calculated from the neighbouring voxels of each hit. Nothing
+ * is kept between renders, so every call casts every ray.
+ * @author Josh Codd.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=4g"})
+public class GradientBenchmark {
+    @Param({"128x128x128", "256x256x256", "512x512x512", "512x512x1024"})
+    public String size;
+
+    @Param({"TOP", "FRONT", "SIDE"})
+    public View view;
+
+    @Param({"false", "true"})
+    public boolean isInterpolated;
+
+    @Param({"false", "true"})
+    public boolean isCached;
+
+    private CTViewer viewer;
+    private ArgbImage image;
+
+    /**
+     * Loads the scan, precomputing its normals if they are cached, and creates the image to render into.
+     * @throws IOException If the scan could not be written or read.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        viewer = new CTViewer(SyntheticScans.load(size));
+        viewer.setIncrementalRendering(false);
+        viewer.setGradientShading(true);
+        viewer.setGradientInterpolation(isInterpolated);
+        viewer.setGradientCaching(isCached);
+        if (isCached) {
+            viewer.getCtScan().getGradientVolume();
+        }
+        image = new ArgbImage(viewer.getSampler(view).getWidth(), viewer.getSampler(view).getHeight());
+    }
+
+    /**
+     * Renders the view with gradient shading.
+     * @return The image rendered into.
+     */
+    @Benchmark
+    public ArgbImage gradientRender() {
+        viewer.volumeRender(image, view, "TF1");
+        return image;
+    }
+}
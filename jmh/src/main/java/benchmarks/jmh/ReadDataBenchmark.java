@@ -0,0 +1,64 @@
+package benchmarks.jmh;
+import models.Volume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a headerless scan into memory with Volume.ReadData, in both byte orders and with and
+ * without the re-sampling applied to the Visible Human scans. The file is read from the page cache after
+ * the first iteration, so this measures decoding and copying rather than the disk.
+ * @author Josh Codd.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=4g"})
+public class ReadDataBenchmark {
+    @Param({"128x128x128", "256x256x256", "512x512x512", "512x512x1024"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean isBigEndian;
+
+    @Param({"false", "true"})
+    public boolean isVH;
+
+    private String filename;
+    private int[] axes;
+
+    /**
+     * Writes the scan to read, unless a previous run already has.
+     * @throws IOException If the scan could not be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        filename = SyntheticScans.getFile(size, isBigEndian).getPath();
+        axes = SyntheticScans.parseSize(size);
+    }
+
+    /**
+     * Reads the scan.
+     * @return The volume read.
+     * @throws IOException If the scan could not be read.
+     */
+    @Benchmark
+    public Volume readData() throws IOException {
+        Volume volume = new Volume(axes[0], axes[1], axes[2]);
+        volume.ReadData(filename, isBigEndian, isVH, false, false);
+        return volume;
+    }
+}
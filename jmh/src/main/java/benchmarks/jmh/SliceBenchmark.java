@@ -0,0 +1,73 @@
+package benchmarks.jmh;
+import models.ArgbImage;
+import models.CTViewer;
+import models.View;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures drawing the middle slice and the maximum intensity projection of each view. The frame cache
+ * is bypassed so that every call draws its frame.
+ * @author Josh Codd.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=4g"})
+public class SliceBenchmark {
+    @Param({"128x128x128", "256x256x256", "512x512x512", "512x512x1024"})
+    public String size;
+
+    @Param({"TOP", "FRONT", "SIDE"})
+    public View view;
+
+    private CTViewer viewer;
+    private ArgbImage image;
+    private int slice;
+
+    /**
+     * Loads the scan and creates the image to draw into.
+     * @throws IOException If the scan could not be written or read.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        viewer = new CTViewer(SyntheticScans.load(size));
+        viewer.setIncrementalRendering(false);
+        image = new ArgbImage(viewer.getSampler(view).getWidth(), viewer.getSampler(view).getHeight());
+        slice = viewer.getSampler(view).getDepth() / 2;
+    }
+
+    /**
+     * Draws the middle slice of the view.
+     * @return The image drawn into.
+     */
+    @Benchmark
+    public ArgbImage drawSlice() {
+        viewer.drawSlice(image, view, slice);
+        return image;
+    }
+
+    /**
+     * Draws the maximum intensity projection of the view.
+     * @return The image drawn into.
+     */
+    @Benchmark
+    public ArgbImage maximumIntensityProjection() {
+        viewer.maximumIntensityProjection(image, view);
+        return image;
+    }
+}
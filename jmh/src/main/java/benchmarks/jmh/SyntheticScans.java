@@ -0,0 +1,65 @@
+package benchmarks.jmh;
+import benchmarks.SyntheticVolume;
+import models.Volume;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides the synthetic scans the JMH benchmarks run on. Sizes are given as "XxYxZ". Each scan is
+ * written once into a directory under the temporary directory and reused by later runs and forks, so
+ * that only the first run pays for writing the larger scans.
+ * @author Josh Codd.
+ */
+public class SyntheticScans {
+    public static final String DIRECTORY = "volume-rendering-jmh";
+
+    /**
+     * Gets the file holding a synthetic scan, writing it if it does not exist yet.
+     * @param size The size of the scan, as "XxYxZ".
+     * @param isBigEndian If the voxels are big-endian rather than little-endian.
+     * @return The file holding the scan.
+     * @throws IOException If the scan could not be written.
+     */
+    public static synchronized File getFile(String size, boolean isBigEndian) throws IOException {
+        int[] axes = parseSize(size);
+        File directory = new File(System.getProperty("java.io.tmpdir"), DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File file = new File(directory, "synthetic_" + size + (isBigEndian ? "_be" : "_le") + ".raw");
+        if (file.length() != (long) axes[0] * axes[1] * axes[2] * 2) {
+            File partial = new File(directory, file.getName() + ".partial");
+            SyntheticVolume.write(partial, axes[0], axes[1], axes[2], isBigEndian);
+            if (!partial.renameTo(file)) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Loads a little-endian synthetic scan into memory.
+     * @param size The size of the scan, as "XxYxZ".
+     * @return The loaded volume.
+     * @throws IOException If the scan could not be written or read.
+     */
+    public static Volume load(String size) throws IOException {
+        int[] axes = parseSize(size);
+        Volume volume = new Volume(axes[0], axes[1], axes[2]);
+        volume.ReadData(getFile(size, false).getPath(), false, false, false, false);
+        return volume;
+    }
+
+    /**
+     * Parses the size of a scan.
+     * @param size The size of the scan, as "XxYxZ".
+     * @return The lengths of the x, y and z axes.
+     */
+    public static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Size must be XxYxZ: " + size);
+        }
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks.jmh;
+import models.ArgbImage;
+import models.CTViewer;
+import models.View;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures full quality volume renders of each view with both transfer functions. Nothing is kept
+ * between renders, so every call casts every ray.
+ * @author Josh Codd.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=4g"})
+public class VolumeRenderBenchmark {
+    @Param({"128x128x128", "256x256x256", "512x512x512", "512x512x1024"})
+    public String size;
+
+    @Param({"TOP", "FRONT", "SIDE"})
+    public View view;
+
+    @Param({"TF1", "TF2"})
+    public String transferFunction;
+
+    private CTViewer viewer;
+    private ArgbImage image;
+
+    /**
+     * Loads the scan and creates the image to render into.
+     * @throws IOException If the scan could not be written or read.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        viewer = new CTViewer(SyntheticScans.load(size));
+        viewer.setIncrementalRendering(false);
+        image = new ArgbImage(viewer.getSampler(view).getWidth(), viewer.getSampler(view).getHeight());
+    }
+
+    /**
+     * Renders the view.
+     * @return The image rendered into.
+     */
+    @Benchmark
+    public ArgbImage volumeRender() {
+        viewer.volumeRender(image, view, transferFunction);
+        return image;
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+import models.CTViewer;
+import models.GBuffer;
+import models.GradientVolume;
+import models.RayCaster;
+import models.TransferFunctionTable;
+import models.View;
+import models.Volume;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the inner loop of volume rendering allocates nothing per pixel. Every view is rendered
+ * with each kind of shading straight on the current thread, and the bytes the thread allocated are
+ * counted. A frame may allocate a few small scratch arrays, but never an amount that grows with the
+ * number of pixels, so the check fails if a frame allocates more than ALLOWED_BYTES.
+ * Usage: java benchmarks.AllocationBenchmark [file x y z isBigEndian isVH] or [x y z] for a synthetic scan.
+ * @author Josh Codd.
+ */
+public class AllocationBenchmark {
+    private static final int WARM_UP = 20;
+    private static final long ALLOWED_BYTES = 1024;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Runs the check.
+     * @param args The scan to load, or the size of a synthetic scan.
+     * @throws Exception If the scan could not be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        Volume volume = RenderBenchmark.load(args);
+        CTViewer viewer = new CTViewer(volume);
+        TransferFunctionTable table = createTable();
+        boolean isPassed = true;
+
+        for (View view : View.values()) {
+            for (boolean isInterpolated : new boolean[]{false, true}) {
+                viewer.setGradientInterpolation(isInterpolated);
+                isPassed &= run(viewer, view, table, "composite", false, null, isInterpolated);
+                isPassed &= run(viewer, view, table, "gradient", true, null, isInterpolated);
+                isPassed &= run(viewer, view, table, "cached", true, volume.getGradientVolume(),
+                        isInterpolated);
+            }
+        }
+        System.out.println(isPassed ? "PASS" : "FAIL");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Renders a view on the current thread, then relights it from its G-buffer, printing the bytes
+     * allocated by each after warming up.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @param table The transfer function to render with.
+     * @param name The name of the kind of shading.
+     * @param isGradient If gradient shading is used.
+     * @param gradients The precomputed normals to shade with, or null to calculate them.
+     * @param isInterpolated If gradient shading is interpolated.
+     * @return If neither allocated more than allowed.
+     */
+    private static boolean run(CTViewer viewer, View view, TransferFunctionTable table, String name,
+                               boolean isGradient, GradientVolume gradients, boolean isInterpolated) {
+        int width = viewer.getSampler(view).getWidth();
+        int height = viewer.getSampler(view).getHeight();
+        int[] pixels = new int[width * height];
+        boolean[] skippable = new boolean[viewer.getCtScan().getBrickGrid().size()];
+        GBuffer surfaces = isGradient ? new GBuffer(width, height, table, isInterpolated, gradients) : null;
+        double[] light = viewer.getLightSource();
+
+        long rendered = Long.MAX_VALUE;
+        long relit = Long.MAX_VALUE;
+        for (int r = 0; r <= WARM_UP; r++) {
+            RayCaster caster = new RayCaster(viewer, viewer.getSampler(view), pixels, width, height, 1,
+                    table.getRGBA(), skippable, 0, 400, isGradient, isInterpolated, light, gradients, surfaces, null);
+            long start = THREADS.getCurrentThreadAllocatedBytes();
+            caster.renderTile(0, 0, width, height);
+            rendered = THREADS.getCurrentThreadAllocatedBytes() - start;
+
+            if (surfaces != null) {
+                start = THREADS.getCurrentThreadAllocatedBytes();
+                surfaces.relight(light, pixels, 0, 0, width, height);
+                relit = THREADS.getCurrentThreadAllocatedBytes() - start;
+            }
+        }
+
+        boolean isPassed = rendered <= ALLOWED_BYTES && (surfaces == null || relit <= ALLOWED_BYTES);
+        System.out.printf("%-5s %-9s %-12s %,9d pixels  render %,9d bytes  relight %9s bytes  %s%n", view, name,
+                isInterpolated ? "interpolated" : "", width * height, rendered,
+                surfaces == null ? "-" : String.format("%,d", relit), isPassed ? "ok" : "ALLOCATES");
+        return isPassed;
+    }
+
+    /**
+     * Creates a transfer function in which soft tissue is faint and bone is opaque, so that rays pass
+     * through most of the volume and every kind of shading hits bone.
+     * @return The transfer function.
+     */
+    private static TransferFunctionTable createTable() {
+        float[] rgba = new float[TransferFunctionTable.ENTRIES * 4];
+        for (int voxel = Short.MIN_VALUE; voxel <= Short.MAX_VALUE; voxel++) {
+            int index = TransferFunctionTable.index((short) voxel);
+            float alpha = voxel >= 400 ? 1 : voxel > -300 ? 0.01f : 0;
+            rgba[index + TransferFunctionTable.RED] = alpha;
+            rgba[index + TransferFunctionTable.GREEN] = alpha;
+            rgba[index + TransferFunctionTable.BLUE] = alpha;
+            rgba[index + TransferFunctionTable.ALPHA] = alpha;
+        }
+        return new TransferFunctionTable("allocation", 0, rgba);
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+import models.ArgbImage;
+import models.CTViewer;
+import models.CompressedBricks;
+import models.View;
+import models.Volume;
+
+/**
+ * Compares an uncompressed volume with a compressed one, reporting the memory each uses, how the
+ * compressed bricks were encoded, and the time per frame of maximum intensity projection and volume
+ * rendering of every view.
+ * Usage: java benchmarks.CompressionBenchmark [file x y z isBigEndian isVH] or [x y z] for a synthetic scan.
+ * @author Josh Codd.
+ */
+public class CompressionBenchmark {
+    private static final int REPETITIONS = 3;
+
+    /**
+     * Runs the benchmark.
+     * @param args The scan to load, or the size of a synthetic scan.
+     * @throws Exception If the scan could not be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        for (boolean isCompressed : new boolean[]{false, true}) {
+            Volume volume = RenderBenchmark.load(args);
+            String name = isCompressed ? "compressed" : "raw";
+            long bytes = 2L * volume.getCT_x_axis() * volume.getCT_y_axis() * volume.getCT_z_axis();
+            if (isCompressed) {
+                long start = System.nanoTime();
+                volume.compress();
+                CompressedBricks bricks = volume.getCompressedBricks();
+                bytes = bricks.getCompressedBytes();
+                System.out.printf("compressed in %.1f ms, bricks: constant %,d  8-bit %,d  12-bit %,d  raw %,d%n",
+                        (System.nanoTime() - start) / 1e6, bricks.getBrickCount(CompressedBricks.CONSTANT),
+                        bricks.getBrickCount(CompressedBricks.DELTA_8),
+                        bricks.getBrickCount(CompressedBricks.DELTA_12),
+                        bricks.getBrickCount(CompressedBricks.RAW));
+            }
+            System.out.printf("%-10s %,14d bytes%n", name, bytes);
+
+            CTViewer viewer = new CTViewer(volume);
+
+            viewer.setIncrementalRendering(false);
+            for (View view : View.values()) {
+                run(viewer, view, name);
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Projects and renders a view several times and prints the best times.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @param name The name of the representation of the volume.
+     */
+    private static void run(CTViewer viewer, View view, String name) {
+        ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                viewer.getSampler(view).getHeight());
+
+        long bestProjection = Long.MAX_VALUE;
+        long bestRender = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            viewer.maximumIntensityProjection(image, view);
+            long projected = System.nanoTime();
+            viewer.volumeRender(image, view, "TF1");
+            long rendered = System.nanoTime();
+            bestProjection = Math.min(bestProjection, projected - start);
+            bestRender = Math.min(bestRender, rendered - projected);
+        }
+
+        System.out.printf("%-10s %-5s MIP %8.1f ms  render %8.1f ms%n", name, view, bestProjection / 1e6,
+                bestRender / 1e6);
+    }
+}
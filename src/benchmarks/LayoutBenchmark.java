@@ -0,0 +1,60 @@
+package benchmarks;
+import models.ArgbImage;
+import models.CTViewer;
+import models.View;
+import models.Volume;
+
+/**
+ * Compares the linear and bricked voxel layouts, reporting the time per frame of a full volume render
+ * and a maximum intensity projection for every view direction. Empty space skipping and early ray
+ * termination are turned off so that every ray walks the whole volume.
+ * Usage: java benchmarks.LayoutBenchmark [file x y z isBigEndian isVH] or [x y z] for a synthetic scan.
+ * @author Josh Codd.
+ */
+public class LayoutBenchmark {
+    private static final int REPETITIONS = 3;
+
+    /**
+     * Runs the benchmark.
+     * @param args The scan to load, or the size of a synthetic scan.
+     * @throws Exception If the scan could not be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        for (boolean isBricked : new boolean[]{false, true}) {
+            CTViewer viewer = new CTViewer(RenderBenchmark.load(args, isBricked));
+            viewer.setIncrementalRendering(false);
+            viewer.setEmptySpaceSkipping(false);
+            viewer.setTerminationThreshold(0);
+            for (View view : View.values()) {
+                run(viewer, view, isBricked ? "bricked" : "linear");
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Renders and projects a view several times and prints the best times.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @param layout The name of the layout the volume is stored in.
+     */
+    private static void run(CTViewer viewer, View view, String layout) {
+        ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                viewer.getSampler(view).getHeight());
+
+        long bestRender = Long.MAX_VALUE;
+        long bestProjection = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            viewer.volumeRender(image, view, "TF1");
+            long rendered = System.nanoTime();
+            viewer.maximumIntensityProjection(image, view);
+            long projected = System.nanoTime();
+            bestRender = Math.min(bestRender, rendered - start);
+            bestProjection = Math.min(bestProjection, projected - rendered);
+        }
+
+        System.out.printf("%-7s %-5s render %8.1f ms  MIP %8.1f ms%n", layout, view, bestRender / 1e6,
+                bestProjection / 1e6);
+    }
+}
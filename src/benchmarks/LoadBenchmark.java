@@ -0,0 +1,95 @@
+package benchmarks;
+import models.Volume;
+import models.VolumeFile;
+import java.io.File;
+
+/**
+ * Compares the time taken to load a large synthetic scan eagerly, by memory-mapping it and from a volume
+ * file. A mapped raw scan is not copied, but its load still reads every page once to gather statistics
+ * and build the brick grid, so its load time is mostly that scan. A volume file already holds both, so
+ * its load reads no voxels at all. The time for a full pass over the loaded volume is also reported.
+ * Usage: java benchmarks.LoadBenchmark [x y z] [repetitions]
+ * @author Josh Codd.
+ */
+public class LoadBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the x, y and z axis lengths of the synthetic scan, then the repetitions.
+     * @throws Exception If the synthetic scan could not be written or read.
+     */
+    public static void main(String[] args) throws Exception {
+        int x = args.length >= 3 ? Integer.parseInt(args[0]) : 512;
+        int y = args.length >= 3 ? Integer.parseInt(args[1]) : 512;
+        int z = args.length >= 3 ? Integer.parseInt(args[2]) : 1024;
+        int repetitions = args.length >= 4 ? Integer.parseInt(args[3]) : 3;
+
+        File file = SyntheticVolume.createTemp(x, y, z, true);
+        System.out.printf("Synthetic scan %dx%dx%d (%.1f MB)%n", x, y, z, file.length() / 1e6);
+
+        File volumeFile = File.createTempFile("synthetic", VolumeFile.EXTENSION);
+        volumeFile.deleteOnExit();
+        Volume converted = new Volume(x, y, z);
+        converted.ReadData(file.getPath(), true, false);
+        VolumeFile.write(converted, volumeFile, 0, false);
+
+        for (int r = 0; r < repetitions; r++) {
+            run(file, x, y, z, false);
+            run(file, x, y, z, true);
+            runVolumeFile(volumeFile, x, y, z);
+        }
+    }
+
+    /**
+     * Loads the scan once and prints the load and traversal times.
+     * @param file The scan to load.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @param isMapped If the scan should be memory-mapped.
+     * @throws Exception If the scan could not be read.
+     */
+    private static void run(File file, int x, int y, int z, boolean isMapped) throws Exception {
+        Volume volume = new Volume(x, y, z);
+        long start = System.nanoTime();
+        volume.ReadData(file.getPath(), true, false, isMapped);
+        long loaded = System.nanoTime();
+
+        print(isMapped ? "mapped" : "eager", volume, file.length(), start, loaded);
+    }
+
+    /**
+     * Loads the scan from a volume file once and prints the load and traversal times.
+     * @param file The volume file to load.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @throws Exception If the volume file could not be read.
+     */
+    private static void runVolumeFile(File file, int x, int y, int z) throws Exception {
+        long start = System.nanoTime();
+        Volume volume = VolumeFile.read(file);
+        long loaded = System.nanoTime();
+        print("ctv", volume, (long) x * y * z * 2, start, loaded);
+    }
+
+    /**
+     * Makes a full pass over a loaded volume and prints the load and traversal times.
+     * @param mode The name of the way the volume was loaded.
+     * @param volume The loaded volume.
+     * @param bytes The number of bytes of voxels in the volume.
+     * @param start When the load started, in nanoseconds.
+     * @param loaded When the load finished, in nanoseconds.
+     */
+    private static void print(String mode, Volume volume, long bytes, long start, long loaded) {
+        long sum = 0;
+        long length = (long) volume.getCT_x_axis() * volume.getCT_y_axis() * volume.getCT_z_axis();
+        for (long index = 0; index < length; index++) {
+            sum += volume.getVoxel(index);
+        }
+        long traversed = System.nanoTime();
+
+        System.out.printf("%-6s load %8.1f ms, full pass %8.1f ms, %.1f MB/s (checksum %d)%n", mode,
+                (loaded - start) / 1e6, (traversed - loaded) / 1e6, bytes / 1e6 / ((loaded - start) / 1e9), sum);
+    }
+}
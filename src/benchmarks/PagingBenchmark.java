@@ -0,0 +1,91 @@
+package benchmarks;
+import models.ArgbImage;
+import models.BrickCache;
+import models.CTViewer;
+import models.View;
+import models.Volume;
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Measures viewing an out-of-core volume with a limited memory budget, reporting the time to sweep through
+ * every slice and to volume render each view, along with the brick cache's hit rate and page traffic.
+ * Usage: java benchmarks.PagingBenchmark budgetMB [file x y z isBigEndian isVH] or [x y z] for a
+ * synthetic scan.
+ * @author Josh Codd.
+ */
+public class PagingBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args The memory budget in megabytes, then the scan to load or the size of a synthetic scan.
+     * @throws Exception If the scan could not be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        long budget = (args.length > 0 ? Long.parseLong(args[0]) : 64) << 20;
+        String[] scan = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+
+        long start = System.nanoTime();
+        Volume volume = load(scan, budget);
+        System.out.printf("load %8.1f ms%n", (System.nanoTime() - start) / 1e6);
+        CTViewer viewer = new CTViewer(volume);
+        viewer.setIncrementalRendering(false);
+        BrickCache cache = volume.getBrickCache();
+
+        for (View view : View.values()) {
+            ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                    viewer.getSampler(view).getHeight());
+            report(cache, view + " slices", () -> {
+                for (int slice = 0; slice < viewer.getSampler(view).getDepth(); slice++) {
+                    viewer.drawSlice(image, view, slice);
+                }
+            });
+            report(cache, view + " render", () -> viewer.volumeRender(image, view, "TF1"));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs part of the benchmark and prints its time and the cache traffic it caused.
+     * @param cache The cache of the volume.
+     * @param name The name of the part.
+     * @param part The part to run.
+     */
+    private static void report(BrickCache cache, String name, Runnable part) {
+        long hits = cache.getHits(), misses = cache.getMisses(), pageIns = cache.getPageIns();
+        long prefetches = cache.getPrefetches(), evictions = cache.getEvictions();
+        long start = System.nanoTime();
+        part.run();
+        long time = System.nanoTime() - start;
+
+        long reads = cache.getHits() - hits + cache.getMisses() - misses;
+        System.out.printf("%-13s %8.1f ms  hit rate %6.2f%%  page-ins %,8d  prefetched %,8d  evicted %,8d%n",
+                name, time / 1e6, reads == 0 ? 100 : 100.0 * (cache.getHits() - hits) / reads,
+                cache.getPageIns() - pageIns, cache.getPrefetches() - prefetches,
+                cache.getEvictions() - evictions);
+    }
+
+    /**
+     * Loads the scan named by the arguments, or a synthetic scan, out-of-core.
+     * @param args The scan to load, or the size of a synthetic scan.
+     * @param budget The number of bytes of voxels to hold in memory.
+     * @return The loaded volume.
+     * @throws Exception If the scan could not be loaded.
+     */
+    private static Volume load(String[] args, long budget) throws Exception {
+        if (args.length >= 4) {
+            Volume volume = new Volume(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]));
+            volume.ReadDataOutOfCore(args[0], args.length > 4 && Boolean.parseBoolean(args[4]),
+                    args.length > 5 && Boolean.parseBoolean(args[5]), budget);
+            return volume;
+        }
+        int x = args.length == 3 ? Integer.parseInt(args[0]) : 256;
+        int y = args.length == 3 ? Integer.parseInt(args[1]) : 256;
+        int z = args.length == 3 ? Integer.parseInt(args[2]) : 256;
+        File file = SyntheticVolume.createTemp(x, y, z, false);
+        Volume volume = new Volume(x, y, z);
+        volume.ReadDataOutOfCore(file.getPath(), false, false, budget);
+        return volume;
+    }
+}
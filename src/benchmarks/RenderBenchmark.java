@@ -0,0 +1,147 @@
+package benchmarks;
+import models.ArgbImage;
+import models.CTViewer;
+import models.View;
+import models.Volume;
+import java.io.File;
+
+/**
+ * Measures volume rendering of every view with and without empty space skipping and early ray
+ * termination, reporting the time per frame and how many samples were taken and skipped, as well as
+ * the time to the first coarse image in progressive mode, and the time to composite the image again from
+ * its kept runs once the skin opacity changes, along with the memory those runs take.
+ * Usage: java benchmarks.RenderBenchmark [file x y z isBigEndian isVH] or [x y z] for a synthetic scan.
+ * @author Josh Codd.
+ */
+public class RenderBenchmark {
+    private static final int REPETITIONS = 3;
+    private static final double DEFAULT_OPACITY = 0.12;
+
+    /**
+     * Runs the benchmark.
+     * @param args The scan to load, or the size of a synthetic scan.
+     * @throws Exception If the scan could not be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        Volume volume = load(args);
+        CTViewer viewer = new CTViewer(volume);
+        viewer.setIncrementalRendering(false);
+
+        for (String transferFunction : new String[]{"TF1", "TF2"}) {
+            for (View view : View.values()) {
+                run(viewer, view, transferFunction, false);
+                run(viewer, view, transferFunction, true);
+                runPreview(viewer, view, transferFunction);
+                runOpacity(viewer, view, transferFunction);
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Loads the scan named by the arguments, or a synthetic scan.
+     * @param args The arguments given to the benchmark.
+     * @return The loaded volume.
+     * @throws Exception If the scan could not be loaded.
+     */
+    static Volume load(String[] args) throws Exception {
+        return load(args, false);
+    }
+
+    /**
+     * Loads the scan named by the arguments, or a synthetic scan, in the specified layout.
+     * @param args The arguments given to the benchmark.
+     * @param isBricked If the voxels should be stored in Morton ordered bricks.
+     * @return The loaded volume.
+     * @throws Exception If the scan could not be loaded.
+     */
+    static Volume load(String[] args, boolean isBricked) throws Exception {
+        if (args.length >= 4) {
+            Volume volume = new Volume(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]));
+            volume.ReadData(args[0], args.length > 4 && Boolean.parseBoolean(args[4]),
+                    args.length > 5 && Boolean.parseBoolean(args[5]), false, isBricked);
+            return volume;
+        }
+        int x = args.length == 3 ? Integer.parseInt(args[0]) : 256;
+        int y = args.length == 3 ? Integer.parseInt(args[1]) : 256;
+        int z = args.length == 3 ? Integer.parseInt(args[2]) : 256;
+        File file = SyntheticVolume.createTemp(x, y, z, false);
+        Volume volume = new Volume(x, y, z);
+        volume.ReadData(file.getPath(), false, false, false, isBricked);
+        return volume;
+    }
+
+    /**
+     * Renders the coarse preview of a view, as shown first in progressive mode, and prints the best time.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @param transferFunction The transfer function to render with.
+     */
+    private static void runPreview(CTViewer viewer, View view, String transferFunction) {
+        ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                viewer.getSampler(view).getHeight());
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            viewer.volumeRender(image, view, transferFunction, viewer.getProgressiveStep(), () -> false);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%s %-5s preview/%-3d %8.1f ms  sampled %,13d%n", transferFunction, view,
+                viewer.getProgressiveStep(), best / 1e6, viewer.getSampledSamples());
+    }
+
+    /**
+     * Renders a view, then changes the skin opacity several times and prints the best time to composite
+     * the view again, and the memory held by the runs of its rays.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @param transferFunction The transfer function to render with.
+     */
+    private static void runOpacity(CTViewer viewer, View view, String transferFunction) {
+        ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                viewer.getSampler(view).getHeight());
+        viewer.setIncrementalRendering(true);
+        viewer.volumeRender(image, view, transferFunction);
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            viewer.setOpacity(DEFAULT_OPACITY * (r + 2));
+            long start = System.nanoTime();
+            viewer.volumeRender(image, view, transferFunction);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        viewer.setOpacity(DEFAULT_OPACITY);
+
+        System.out.printf("%s %-5s opacity     %8.1f ms  sampled %,13d  runs %,13d bytes%n", transferFunction, view,
+                best / 1e6, viewer.getSampledSamples(), viewer.getRaySegmentBytes());
+        viewer.setIncrementalRendering(false);
+    }
+
+    /**
+     * Renders a view several times and prints the best time and the sample counts.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @param transferFunction The transfer function to render with.
+     * @param isAccelerated If empty space skipping and early ray termination should be used.
+     */
+    private static void run(CTViewer viewer, View view, String transferFunction, boolean isAccelerated) {
+        viewer.setEmptySpaceSkipping(isAccelerated);
+        viewer.setTerminationThreshold(isAccelerated ? 1.0 / 512 : 0);
+        ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                viewer.getSampler(view).getHeight());
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            viewer.volumeRender(image, view, transferFunction);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%s %-5s %-11s %8.1f ms  sampled %,13d  skipped %,13d  terminated %,13d%n",
+                transferFunction, view, isAccelerated ? "accelerated" : "full", best / 1e6,
+                viewer.getSampledSamples(), viewer.getSkippedSamples(), viewer.getTerminatedSamples());
+    }
+}
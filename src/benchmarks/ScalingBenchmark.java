@@ -0,0 +1,66 @@
+package benchmarks;
+import models.ArgbImage;
+import models.CTViewer;
+import models.TileScheduler;
+import models.View;
+import models.Volume;
+
+/**
+ * Measures how volume rendering scales with the number of threads, reporting the throughput of every
+ * view from 1 thread up to every available core, and the speedup over a single thread, for a range of
+ * tile sizes.
+ * Usage: java benchmarks.ScalingBenchmark [file x y z isBigEndian isVH] or [x y z] for a synthetic scan.
+ * @author Josh Codd.
+ */
+public class ScalingBenchmark {
+    private static final int REPETITIONS = 3;
+    private static final int[] TILE_SIZES = {16, TileScheduler.DEFAULT_TILE_SIZE, 64};
+
+    /**
+     * Runs the benchmark.
+     * @param args The scan to load, or the size of a synthetic scan.
+     * @throws Exception If the scan could not be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        Volume volume = RenderBenchmark.load(args);
+        CTViewer viewer = new CTViewer(volume);
+        viewer.setIncrementalRendering(false);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (int tileSize : TILE_SIZES) {
+            double[] single = new double[View.values().length];
+            for (int threads = 1; threads <= cores; threads++) {
+                viewer.setTiling(tileSize, threads);
+                for (View view : View.values()) {
+                    double framesPerSecond = run(viewer, view);
+                    if (threads == 1) {
+                        single[view.ordinal()] = framesPerSecond;
+                    }
+                    System.out.printf("tile %3d  threads %3d  %-5s %8.2f frames/s  speedup %5.2f%n", tileSize,
+                            threads, view, framesPerSecond, framesPerSecond / single[view.ordinal()]);
+                }
+            }
+        }
+        viewer.setTiling(TileScheduler.DEFAULT_TILE_SIZE, 0);
+        System.exit(0);
+    }
+
+    /**
+     * Renders a view several times and finds the best throughput.
+     * @param viewer The viewer to render with.
+     * @param view The view to render.
+     * @return The number of frames rendered per second.
+     */
+    private static double run(CTViewer viewer, View view) {
+        ArgbImage image = new ArgbImage(viewer.getSampler(view).getWidth(),
+                viewer.getSampler(view).getHeight());
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            viewer.volumeRender(image, view, "TF1");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return 1e9 / best;
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes deterministic synthetic CT scans, so benchmarks can be repeated without the real datasets.
+ * The scan is a phantom of air surrounding an ellipsoid of soft tissue that contains a shell of bone,
+ * with a small amount of repeatable noise.
+ * @author Josh Codd.
+ */
+public class SyntheticVolume {
+    private static final short AIR = -1024;
+    private static final short SKIN = -100;
+    private static final short BONE = 1200;
+
+    /**
+     * Writes a headerless synthetic scan to file.
+     * @param file The file to write to.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @param isBigEndian If the voxels should be written big-endian rather than little-endian.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(File file, int x, int y, int z, boolean isBigEndian) throws IOException {
+        ByteOrder order = isBigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        ByteBuffer slice = ByteBuffer.allocateDirect(x * y * 2).order(order);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int k = 0; k < z; k++) {
+                slice.clear();
+                for (int j = 0; j < y; j++) {
+                    for (int i = 0; i < x; i++) {
+                        slice.putShort(voxel(i, j, k, x, y, z));
+                    }
+                }
+                slice.flip();
+                while (slice.hasRemaining()) {
+                    channel.write(slice);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a temporary synthetic scan that is deleted when the JVM exits.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @param isBigEndian If the voxels should be written big-endian rather than little-endian.
+     * @return The file written to.
+     * @throws IOException If the file could not be written.
+     */
+    public static File createTemp(int x, int y, int z, boolean isBigEndian) throws IOException {
+        File file = File.createTempFile("synthetic_" + x + "_" + y + "_" + z + "_", ".raw");
+        file.deleteOnExit();
+        write(file, x, y, z, isBigEndian);
+        return file;
+    }
+
+    /**
+     * Calculates the value of the phantom at a position.
+     * @param i The x location.
+     * @param j The y location.
+     * @param k The z location.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @return The voxel at that location.
+     */
+    private static short voxel(int i, int j, int k, int x, int y, int z) {
+        double dx = (i - x / 2.0) / (x * 0.4);
+        double dy = (j - y / 2.0) / (y * 0.4);
+        double dz = (k - z / 2.0) / (z * 0.45);
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        int noise = ((i * 73856093) ^ (j * 19349663) ^ (k * 83492791)) & 31;
+
+        if (distance > 1) {
+            return (short) (AIR + noise);
+        } else if (distance > 0.7 && distance < 0.8) {
+            return (short) (BONE + noise);
+        }
+        return (short) (SKIN + noise);
+    }
+}
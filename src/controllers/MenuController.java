@@ -5,6 +5,7 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import models.*;
 import javafx.stage.Stage;
+import views.Menu;
 import views.Viewer;
 import java.io.File;
 import java.util.Objects;
@@ -17,12 +18,20 @@ import static javafx.collections.FXCollections.observableArrayList;
  */
 public class MenuController {
     private static final String PATH_TO_SCANS = "src/data";
+    private static final int OUT_OF_CORE_HEAP_FRACTION = 4;
+    private static VolumeLoader loading;
+    private static ViewerController loadingViewer;
+    private static ViewerController shownViewer;
     private String filename;
     private int xAxis = 0;
     private int yAxis = 0;
     private int zAxis = 0;
     private boolean isCorrectEndian = false;
     private boolean isVH = false;
+    private boolean isMapped = false;
+    private boolean isBricked = false;
+    private boolean isOutOfCore = false;
+    private boolean isCompressed = false;
     private Stage stage;
 
     @FXML
@@ -35,6 +44,13 @@ public class MenuController {
     public Button defaultButton;
     public VBox menuPane;
     public CheckBox vhResampleBox;
+    public CheckBox mapFileBox;
+    public CheckBox brickedBox;
+    public CheckBox outOfCoreBox;
+    public CheckBox compressBox;
+    public VBox loadPane;
+    public ProgressBar loadProgressBar;
+    public Label loadLabel;
 
     /**
      * Initializes the user interface elements.
@@ -62,6 +78,18 @@ public class MenuController {
         vhResampleBox.selectedProperty().addListener((observable, oldValue, newValue) ->
                 isVH = newValue);
 
+        mapFileBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                isMapped = newValue);
+
+        brickedBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                isBricked = newValue);
+
+        outOfCoreBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                isOutOfCore = newValue);
+
+        compressBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                isCompressed = newValue);
+
         filenameChoiceBox.setItems(getScans());
 
         filenameChoiceBox.valueProperty().addListener((observable, oldValue, newValue) -> {
@@ -74,36 +102,54 @@ public class MenuController {
 
 
     /**
-     * Opens a new viewer using data entered into page.
+     * Loads the scan entered into page in the background, then opens a new viewer.
      */
     public void handleSubmitClick() {
-        Volume v = new Volume(xAxis, yAxis, zAxis);
-        try {
-            v.ReadData(filename, isCorrectEndian, isVH);
-            new Viewer(stage, new CTViewer(v));
-        } catch (Exception e){
-            Alert error = new Alert(Alert.AlertType.ERROR,
-                    "An error was encountered.",
-                    ButtonType.OK);
-            error.showAndWait();
-            e.printStackTrace();
+        String filename = this.filename;
+        if (VolumeFile.isVolumeFile(filename)) {
+            load(new VolumeLoader(progress -> VolumeFile.read(new File(filename), progress), 0,
+                    new File(filename).length()));
+            return;
         }
+
+        int x = xAxis, y = yAxis, z = zAxis;
+        boolean isCorrectEndian = this.isCorrectEndian, isVH = this.isVH, isMapped = this.isMapped;
+        boolean isBricked = this.isBricked, isOutOfCore = this.isOutOfCore, isCompressed = this.isCompressed;
+        load(new VolumeLoader(progress -> {
+            Volume v = new Volume(x, y, z);
+            if (isOutOfCore) {
+                v.ReadDataOutOfCore(filename, isCorrectEndian, isVH,
+                        Runtime.getRuntime().maxMemory() / OUT_OF_CORE_HEAP_FRACTION, progress);
+            } else {
+                // A compressed volume changes layout once loaded, so cannot be viewed while it loads.
+                v.ReadData(filename, isCorrectEndian, isVH, isMapped, isBricked,
+                        isCompressed ? -1 : ViewerController.INITIAL_SLICE, progress);
+            }
+            if (isCompressed) {
+                v.compress();
+            }
+            return v;
+        }, z, (long) x * y * z * 2));
     }
 
     /**
-     * Opens a new viewer with the standard CAT scan being displayed.
+     * Loads the standard CAT scan in the background, then opens a new viewer displaying it.
      */
     public void handleDefaultClick() {
-        Volume v = new Volume(256,256, 113);
-        try {
-            v.ReadData("src/data/CThead_256_256_113", false, false);
+        load(new VolumeLoader(progress -> {
+            Volume v = new Volume(256,256, 113);
+            v.ReadData("src/data/CThead_256_256_113", false, false, false, false, ViewerController.INITIAL_SLICE,
+                    progress);
+            return v;
+        }, 113, 256L * 256 * 113 * 2));
+    }
 
-            new Viewer(stage, new CTViewer(v));
-        } catch (Exception e){
-            Alert error = new Alert(Alert.AlertType.ERROR,
-                    "An error was encountered.",
-                    ButtonType.OK);
-            error.showAndWait();
+    /**
+     * Cancels the scan being loaded.
+     */
+    public void handleCancelClick() {
+        if (loading != null) {
+            loading.cancel(false);
         }
     }
 
@@ -116,6 +162,122 @@ public class MenuController {
     }
 
 
+    /**
+     * Starts loading a scan, cancelling any scan already loading. A viewer is opened as soon as the scan
+     * can be viewed, which is before it has finished loading if it is loaded slice by slice. Progress is
+     * shown below the menu until then, and in the title of the window after.
+     * @param loader The loader of the scan.
+     */
+    private void load(VolumeLoader loader) {
+        if (loading != null) {
+            loading.cancel(false);
+        }
+        loading = loader;
+        loadingViewer = null;
+        String title = stage.getTitle();
+        showLoading(loader);
+
+        loader.setOnPreview(volume -> {
+            if (loading == loader) {
+                loadingViewer = show(new Viewer(stage, new CTViewer(volume)).getController());
+                loadingViewer.setLoading(true);
+            }
+        });
+        loader.messageProperty().addListener((observable, oldValue, newValue) -> {
+            if (loadingViewer != null && loading == loader) {
+                stage.setTitle(newValue);
+                loadingViewer.slicesLoaded();
+            }
+        });
+        loader.setOnSucceeded(event -> {
+            finishLoading(loader, title);
+            if (loadingViewer == null) {
+                show(new Viewer(stage, new CTViewer(loader.getValue())).getController());
+            } else {
+                loadingViewer.setLoading(false);
+                loadingViewer = null;
+            }
+        });
+        loader.setOnFailed(event -> {
+            closeLoadingViewer(loader);
+            finishLoading(loader, title);
+            Alert error = new Alert(Alert.AlertType.ERROR,
+                    "An error was encountered.",
+                    ButtonType.OK);
+            error.showAndWait();
+            loader.getException().printStackTrace();
+        });
+        loader.setOnCancelled(event -> {
+            closeLoadingViewer(loader);
+            finishLoading(loader, title);
+        });
+        loader.start();
+    }
+
+    /**
+     * Shows the progress of a load in place of the submit buttons.
+     * @param loader The loader of the scan.
+     */
+    private void showLoading(VolumeLoader loader) {
+        submitButton.setDisable(true);
+        defaultButton.setDisable(true);
+        loadProgressBar.progressProperty().bind(loader.progressProperty());
+        loadLabel.textProperty().bind(loader.messageProperty());
+        loadPane.setVisible(true);
+        loadPane.setManaged(true);
+    }
+
+    /**
+     * Hides the progress of a load that has finished, failed or been cancelled.
+     * @param loader The loader of the scan.
+     * @param title The title of the window before the load started.
+     */
+    private void finishLoading(VolumeLoader loader, String title) {
+        loadProgressBar.progressProperty().unbind();
+        loadLabel.textProperty().unbind();
+        loadPane.setVisible(false);
+        loadPane.setManaged(false);
+        defaultButton.setDisable(false);
+        isFilledIn();
+        if (loading == loader) {
+            loading = null;
+            stage.setTitle(title);
+        }
+    }
+
+    /**
+     * Closes the viewer shown while a scan was loading, if the load did not finish and has not been
+     * replaced by another, and returns to the menu. The viewer would otherwise be left showing a partly
+     * loaded scan that can never finish loading. This may be the viewer of an earlier load that was
+     * cancelled when this load started from its menu, and that stayed shown for as long as this load had
+     * nothing to show in its place.
+     * @param loader The loader of the scan.
+     */
+    private void closeLoadingViewer(VolumeLoader loader) {
+        if (loading != loader || shownViewer == null || !shownViewer.isLoading()) {
+            return;
+        }
+        shownViewer.close();
+        shownViewer = null;
+        loadingViewer = null;
+        Menu menu = new Menu(stage);
+        new Viewer(stage, menu.getRoot());
+    }
+
+    /**
+     * Records the viewer just shown in place of the last viewer opened from a menu, closing that viewer so
+     * that its rendering threads and volume are released.
+     * @param viewer The controller of the viewer shown.
+     * @return The controller of the viewer shown.
+     */
+    private static ViewerController show(ViewerController viewer) {
+        if (shownViewer != null) {
+            shownViewer.close();
+        }
+        shownViewer = viewer;
+        return viewer;
+    }
+
     /**
      * Checks if a string is possible to convert to a integer.
      * @param value The value to convert.
@@ -145,10 +307,10 @@ public class MenuController {
 
     /**
      * Handles submit button validation. Can only be pressed if all sensible values have been
-     * entered.
+     * entered. A volume file holds its own dimensions, so none need to be entered for one.
      */
     private void isFilledIn(){
         submitButton.setDisable(filenameChoiceBox.getValue() == null ||
-                xAxis == 0 || yAxis == 0 || zAxis == 0);
+                !VolumeFile.isVolumeFile(filename) && (xAxis == 0 || yAxis == 0 || zAxis == 0));
     }
 }
@@ -0,0 +1,70 @@
+package controllers;
+import javafx.application.Platform;
+import models.View;
+import java.util.Set;
+
+/**
+ * A render that has been submitted to a render scheduler, along with the views it updates.
+ * @author Josh Codd.
+ */
+public class RenderJob {
+    private final Set<View> views;
+    private final RenderTask task;
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Creates a render job.
+     * @param views The views the render updates.
+     * @param task The render to run.
+     */
+    public RenderJob(Set<View> views, RenderTask task) {
+        this.views = views;
+        this.task = task;
+    }
+
+    /**
+     * Checks if this job is replaced by another, that is, if the other updates every view this does.
+     * @param other The other job.
+     * @return If this job is no longer needed once the other has run.
+     */
+    public boolean isReplacedBy(RenderJob other) {
+        return other.views.containsAll(views);
+    }
+
+    /**
+     * Cancels the job.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Gets if the job has been cancelled.
+     * @return If the job has been cancelled.
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Displays a finished frame on the JavaFX application thread, unless the job is cancelled first.
+     * @param display The action that displays the frame.
+     */
+    public void publish(Runnable display) {
+        if (!isCancelled) {
+            Platform.runLater(() -> {
+                if (!isCancelled) {
+                    display.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the render to run.
+     * @return The render task.
+     */
+    public RenderTask getTask() {
+        return task;
+    }
+}
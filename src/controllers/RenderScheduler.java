@@ -0,0 +1,93 @@
+package controllers;
+import models.View;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs renders one after another on a background thread, so the user interface stays responsive.
+ * Submitting a render drops any queued render it replaces and cancels the running one if that is
+ * replaced too, so only the latest request for each view is ever waited for. Jobs publish finished
+ * frames on the JavaFX application thread, unless they have been replaced in the meantime.
+ * @author Josh Codd.
+ */
+public class RenderScheduler {
+    private static final long IDLE_SECONDS = 10;
+    private final ThreadPoolExecutor executor;
+    private final Deque<RenderJob> pending = new ArrayDeque<>();
+    private RenderJob running;
+
+    /**
+     * Creates a render scheduler. Its thread stops when it has been idle for a while.
+     */
+    public RenderScheduler() {
+        executor = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "render");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a render to be run.
+     * @param views The views the render updates.
+     * @param task The render to run.
+     */
+    public synchronized void submit(Set<View> views, RenderTask task) {
+        RenderJob job = new RenderJob(views, task);
+        pending.removeIf(queued -> queued.isReplacedBy(job));
+        if (running != null && running.isReplacedBy(job)) {
+            running.cancel();
+        }
+        pending.add(job);
+        if (running == null) {
+            runNext();
+        }
+    }
+
+    /**
+     * Cancels all renders and stops the background thread.
+     */
+    public synchronized void shutdown() {
+        pending.clear();
+        if (running != null) {
+            running.cancel();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Starts the next queued render, if there is one.
+     */
+    private synchronized void runNext() {
+        running = pending.poll();
+        if (running != null && !executor.isShutdown()) {
+            RenderJob job = running;
+            executor.execute(() -> run(job));
+        }
+    }
+
+    /**
+     * Runs a render and publishes its frame.
+     * @param job The render to run.
+     */
+    private void run(RenderJob job) {
+        try {
+            if (!job.isCancelled()) {
+                job.getTask().render(job);
+            }
+        } catch (RuntimeException e) {
+            // A render cancelled because its viewer closed can fail reading the released volume.
+            if (!job.isCancelled()) {
+                e.printStackTrace();
+            }
+        } finally {
+            runNext();
+        }
+    }
+}
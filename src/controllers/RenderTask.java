@@ -0,0 +1,14 @@
+package controllers;
+
+/**
+ * A render to be run off the JavaFX application thread.
+ * @author Josh Codd.
+ */
+public interface RenderTask {
+
+    /**
+     * Renders one or more frames, publishing each through the job as it is finished.
+     * @param job The job being run, to check for cancellation and to publish frames through.
+     */
+    void render(RenderJob job);
+}
@@ -1,4 +1,6 @@
 package controllers;
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
@@ -9,8 +11,13 @@ import javafx.scene.image.PixelReader;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import models.CTViewer;
+import models.SlicePrefetcher;
+import models.View;
+import views.FxPixelBuffer;
 import views.Menu;
+import java.util.EnumSet;
 
 /**
  * Controller class for the viewer interface.
@@ -18,6 +25,7 @@ import views.Menu;
  * @author Josh Codd.
  */
 public class ViewerController {
+    public static final int INITIAL_SLICE = 76;
     @FXML
     public ImageView firstView;
     public ImageView secondView;
@@ -46,7 +54,14 @@ public class ViewerController {
     private CTViewer ctViewer;
     private boolean isVolumeRendered = false;
     private boolean isMIP = false;
+    private boolean isLoading = false;
     private String transferFunction = "TF1";
+    private static final double REFINE_DELAY_MILLIS = 250;
+    private static final double LOAD_REFRESH_MILLIS = 250;
+    private final RenderScheduler scheduler = new RenderScheduler();
+    private SlicePrefetcher prefetcher;
+    private final PauseTransition refineDelay = new PauseTransition(Duration.millis(REFINE_DELAY_MILLIS));
+    private final PauseTransition loadRefresh = new PauseTransition(Duration.millis(LOAD_REFRESH_MILLIS));
 
     WritableImage top_image;
     WritableImage front_image;
@@ -59,6 +74,7 @@ public class ViewerController {
         top_image = new WritableImage(ctViewer.getTop_width(), ctViewer.getTop_height());
         front_image = new WritableImage(ctViewer.getFront_width(), ctViewer.getFront_height());
         side_image = new WritableImage(ctViewer.getSide_width(), ctViewer.getSide_height());
+        prefetcher = new SlicePrefetcher(ctViewer);
 
         Menu menu = new Menu(stage);
         menuPane.getChildren().add(menu.getRoot());
@@ -86,13 +102,13 @@ public class ViewerController {
         midSlideButton.setOnAction(event -> {
             reset();
             isMIP = false;
-            firstViewSlider.valueProperty().setValue(75);
-            secondViewSlider.valueProperty().setValue(75);
-            thirdViewSlider.valueProperty().setValue(75);
+            firstViewSlider.valueProperty().setValue(INITIAL_SLICE - 1);
+            secondViewSlider.valueProperty().setValue(INITIAL_SLICE - 1);
+            thirdViewSlider.valueProperty().setValue(INITIAL_SLICE - 1);
 
-            firstViewSlider.valueProperty().setValue(76);
-            secondViewSlider.valueProperty().setValue(76);
-            thirdViewSlider.valueProperty().setValue(76);
+            firstViewSlider.valueProperty().setValue(INITIAL_SLICE);
+            secondViewSlider.valueProperty().setValue(INITIAL_SLICE);
+            thirdViewSlider.valueProperty().setValue(INITIAL_SLICE);
         });
 
         volumeRenderButton.setOnAction(event -> {
@@ -108,21 +124,24 @@ public class ViewerController {
         });
 
         firstViewSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
-            ctViewer.drawSlice(top_image, "top", newValue.intValue());
+            drawSlice(top_image, View.TOP, newValue.intValue());
+            prefetcher.scrubbed(View.TOP, newValue.intValue());
             sliderValueStyle(firstViewSlider);
             reset();
             isMIP = false;
         });
 
         secondViewSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
-            ctViewer.drawSlice(front_image,"front", newValue.intValue());
+            drawSlice(front_image, View.FRONT, newValue.intValue());
+            prefetcher.scrubbed(View.FRONT, newValue.intValue());
             sliderValueStyle(secondViewSlider);
             reset();
             isMIP = false;
         });
 
         thirdViewSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
-            ctViewer.drawSlice(side_image, "side", newValue.intValue());
+            drawSlice(side_image, View.SIDE, newValue.intValue());
+            prefetcher.scrubbed(View.SIDE, newValue.intValue());
             sliderValueStyle(thirdViewSlider);
             reset();
             isMIP = false;
@@ -156,9 +175,7 @@ public class ViewerController {
 
         mipButton.setOnAction(e -> {
             if (!isMIP) {
-                ctViewer.maximumIntensityProjection(top_image, "top");
-                ctViewer.maximumIntensityProjection(side_image, "side");
-                ctViewer.maximumIntensityProjection(front_image, "front");
+                maximumIntensityProjection();
                 reset();
                 isMIP = true;
             } else {
@@ -171,6 +188,59 @@ public class ViewerController {
             menu.getRoot().setVisible(!menu.getRoot().isVisible());
             volRendMenu.setManaged(false);
         });
+
+        loadRefresh.setOnFinished(event -> drawSlices());
+    }
+
+    /**
+     * Sets if the volume is still loading. While it loads only slices can be viewed, so volume rendering
+     * and maximum intensity projection are unavailable. Once it has loaded, the slices are drawn again
+     * with the final range of the volume.
+     * @param isLoading If the volume is still loading.
+     */
+    public void setLoading(boolean isLoading) {
+        this.isLoading = isLoading;
+        volumeRenderButton.setDisable(isLoading);
+        mipButton.setDisable(isLoading);
+        if (!isLoading) {
+            loadRefresh.stop();
+            ctViewer.refreshStatistics();
+            drawSlices();
+        }
+    }
+
+    /**
+     * Checks if the volume shown is still loading.
+     * @return If the volume is still loading.
+     */
+    public boolean isLoading() {
+        return isLoading;
+    }
+
+    /**
+     * Stops rendering, prefetching and refreshing, once the viewer is no longer shown, and releases its
+     * volume. A viewer showing only the menu has nothing to stop.
+     */
+    public void close() {
+        loadRefresh.stop();
+        refineDelay.stop();
+        scheduler.shutdown();
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        if (ctViewer != null) {
+            ctViewer.shutdown();
+        }
+    }
+
+    /**
+     * Draws the slices again shortly after more of a loading volume has arrived, at most once per
+     * LOAD_REFRESH_MILLIS however often slices arrive.
+     */
+    public void slicesLoaded() {
+        if (loadRefresh.getStatus() != Animation.Status.RUNNING) {
+            loadRefresh.playFromStart();
+        }
     }
 
     /**
@@ -189,11 +259,58 @@ public class ViewerController {
 
     /**
      * Carries out volume rendering on all views.
+     * In progressive mode a coarse image is shown straight away, then refined to full quality once
+     * settings have stopped changing for a short time.
      */
     public void volumeRender(){
-        volumeRenderSingle(side_image, "side");
-        volumeRenderSingle(top_image, "top");
-        volumeRenderSingle(front_image, "front");
+        int coarseStep = ctViewer.isProgressive() ? ctViewer.getProgressiveStep() : 1;
+        volumeRenderSingle(side_image, View.SIDE, coarseStep, coarseStep);
+        volumeRenderSingle(top_image, View.TOP, coarseStep, coarseStep);
+        volumeRenderSingle(front_image, View.FRONT, coarseStep, coarseStep);
+
+        refineDelay.stop();
+        if (coarseStep > 1) {
+            refineDelay.setOnFinished(event -> {
+                volumeRenderSingle(side_image, View.SIDE, coarseStep / 2, 1);
+                volumeRenderSingle(top_image, View.TOP, coarseStep / 2, 1);
+                volumeRenderSingle(front_image, View.FRONT, coarseStep / 2, 1);
+            });
+            refineDelay.playFromStart();
+        }
+    }
+
+    /**
+     * Draws a slice of a view in the background, replacing any earlier request for that view.
+     * @param image The image to display the slice in.
+     * @param view The direction to view the scan/dataset from. i.e front, side or top.
+     * @param slice The slice to display.
+     */
+    public void drawSlice(WritableImage image, View view, int slice) {
+        refineDelay.stop();
+        scheduler.submit(EnumSet.of(view), job -> {
+            WritableImage frame = new WritableImage((int) image.getWidth(), (int) image.getHeight());
+            ctViewer.drawSlice(new FxPixelBuffer(frame), view, slice);
+            job.publish(() -> display(image, frame));
+        });
+    }
+
+    /**
+     * Carries out maximum intensity projection on all views in the background.
+     */
+    public void maximumIntensityProjection() {
+        refineDelay.stop();
+        scheduler.submit(EnumSet.allOf(View.class), job -> {
+            WritableImage top = new WritableImage((int) top_image.getWidth(), (int) top_image.getHeight());
+            WritableImage front = new WritableImage((int) front_image.getWidth(), (int) front_image.getHeight());
+            WritableImage side = new WritableImage((int) side_image.getWidth(), (int) side_image.getHeight());
+            ctViewer.maximumIntensityProjection(new FxPixelBuffer(top), new FxPixelBuffer(front),
+                    new FxPixelBuffer(side), job::isCancelled);
+            job.publish(() -> {
+                display(top_image, top);
+                display(front_image, front);
+                display(side_image, side);
+            });
+        });
     }
 
     /**
@@ -256,12 +373,44 @@ public class ViewerController {
     }
 
     /**
-     * Carries out volume rendering on a single view.
+     * Carries out volume rendering on a single view in the background, in passes from a coarse step
+     * down to a finer step, halving the step each pass. Each pass is displayed as it finishes.
      * @param image The image to display the rendered image in.
      * @param view The direction to view the scan/dataset from. i.e front, side or top.
+     * @param firstStep The step of the first, coarsest pass.
+     * @param lastStep The step of the last pass, 1 for full quality.
+     */
+    private void volumeRenderSingle(WritableImage image, View view, int firstStep, int lastStep){
+        String renderedTransferFunction = transferFunction;
+        scheduler.submit(EnumSet.of(view), job -> {
+            for (int step = Math.max(firstStep, 1); !job.isCancelled(); step = Math.max(step / 2, 1)) {
+                WritableImage frame = new WritableImage((int) image.getWidth(), (int) image.getHeight());
+                ctViewer.volumeRender(new FxPixelBuffer(frame), view, renderedTransferFunction, step,
+                        job::isCancelled);
+                job.publish(() -> display(image, frame));
+                if (step <= lastStep) {
+                    break;
+                }
+            }
+        });
+    }
+
+    /**
+     * Draws the slices currently selected on all views.
+     */
+    private void drawSlices() {
+        drawSlice(top_image, View.TOP, (int) firstViewSlider.getValue());
+        drawSlice(front_image, View.FRONT, (int) secondViewSlider.getValue());
+        drawSlice(side_image, View.SIDE, (int) thirdViewSlider.getValue());
+    }
+
+    /**
+     * Copies a finished frame into the image on screen.
+     * @param image The image to display the frame in.
+     * @param frame The finished frame.
      */
-    private void volumeRenderSingle(WritableImage image, String view){
-        PixelReader reader = ctViewer.volumeRender(image, view, transferFunction).getPixelReader();
+    private void display(WritableImage image, WritableImage frame) {
+        PixelReader reader = frame.getPixelReader();
         int width = (int) image.getWidth();
         int height =  (int) image.getHeight();
         image.getPixelWriter().setPixels(0,0,width, height, reader, 0, 0);
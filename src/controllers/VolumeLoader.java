@@ -0,0 +1,119 @@
+package controllers;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import models.LoadProgress;
+import models.Volume;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Loads a volume on a background thread, reporting progress in slices and bytes and allowing the load to
+ * be cancelled. A volume loaded slice by slice is handed over as soon as its first slice is present,
+ * so that it can be viewed while the rest of it loads.
+ * @author Josh Codd.
+ */
+public class VolumeLoader extends Task<Volume> implements LoadProgress {
+    private static final double BYTES_PER_MB = 1 << 20;
+    private final Load load;
+    private final int totalSlices;
+    private final long totalBytes;
+    private final AtomicInteger slices = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private Consumer<Volume> onPreview = volume -> { };
+
+    /**
+     * The work of loading a volume.
+     */
+    public interface Load {
+
+        /**
+         * Loads the volume.
+         * @param progress The receiver of the progress of the load.
+         * @return The loaded volume.
+         * @throws Exception If the volume could not be loaded.
+         */
+        Volume run(LoadProgress progress) throws Exception;
+    }
+
+    /**
+     * Creates a loader.
+     * @param load The work of loading the volume.
+     * @param totalSlices The number of slices in the volume, or 0 if it is not known until the file is read,
+     *                    in which case only bytes are shown.
+     * @param totalBytes The number of bytes of the file to read.
+     */
+    public VolumeLoader(Load load, int totalSlices, long totalBytes) {
+        this.load = load;
+        this.totalSlices = totalSlices;
+        this.totalBytes = totalBytes;
+        updateMessage("Loading...");
+    }
+
+    /**
+     * Starts loading on a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "load");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets the action to take on the JavaFX application thread once a volume can be viewed while it loads.
+     * @param onPreview The action, given the volume being loaded.
+     */
+    public void setOnPreview(Consumer<Volume> onPreview) {
+        this.onPreview = onPreview;
+    }
+
+    /**
+     * Gets the number of slices loaded so far.
+     * @return The number of slices.
+     */
+    public int getSlicesLoaded() {
+        return slices.get();
+    }
+
+    /**
+     * Records slices that have been loaded and updates the progress and message of the load.
+     * @param slices The number of slices just loaded.
+     * @param bytes The number of bytes of the file just read.
+     */
+    @Override
+    public void slicesLoaded(int slices, long bytes) {
+        int loadedSlices = this.slices.addAndGet(slices);
+        long loadedBytes = this.bytes.addAndGet(bytes);
+        updateProgress(loadedBytes, totalBytes);
+        if (totalSlices > 0) {
+            updateMessage(String.format("Loaded %d of %d slices (%.0f of %.0f MB)", loadedSlices, totalSlices,
+                    loadedBytes / BYTES_PER_MB, totalBytes / BYTES_PER_MB));
+        } else {
+            updateMessage(String.format("Loaded %.0f of %.0f MB", loadedBytes / BYTES_PER_MB,
+                    totalBytes / BYTES_PER_MB));
+        }
+    }
+
+    /**
+     * Hands over a volume that can be viewed while it loads, unless the load has been cancelled.
+     * @param volume The volume being loaded.
+     */
+    @Override
+    public void previewLoaded(Volume volume) {
+        Platform.runLater(() -> {
+            if (!isCancelled()) {
+                onPreview.accept(volume);
+            }
+        });
+    }
+
+    /**
+     * Loads the volume.
+     * @return The loaded volume.
+     * @throws Exception If the volume could not be loaded.
+     */
+    @Override
+    protected Volume call() throws Exception {
+        return load.run(this);
+    }
+}
@@ -0,0 +1,69 @@
+package models;
+import java.util.Arrays;
+
+/**
+ * An image held as a plain array of ARGB pixels, for drawing without a display.
+ * @author Josh Codd.
+ */
+public class ArgbImage implements PixelBuffer {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Creates a black image.
+     * @param width The width in pixels.
+     * @param height The height in pixels.
+     */
+    public ArgbImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        Arrays.fill(pixels, 0xff000000);
+    }
+
+    /**
+     * Gets the width of the image.
+     * @return The width in pixels.
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     * @return The height in pixels.
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets every pixel of the image.
+     * @param pixels The opaque ARGB pixels, row by row. Only the first width * height are used.
+     */
+    @Override
+    public void setPixels(int[] pixels) {
+        System.arraycopy(pixels, 0, this.pixels, 0, width * height);
+    }
+
+    /**
+     * Gets a single pixel of the image.
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @return The ARGB pixel.
+     */
+    public int getArgb(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    /**
+     * Gets the pixels of the image, which are not copied.
+     * @return The ARGB pixels, row by row.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+}
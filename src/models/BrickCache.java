@@ -0,0 +1,280 @@
+package models;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pages the voxels of an out-of-core volume in from a file of pages, as laid out by VoxelLayout.paged,
+ * holding as many pages in memory as fit within a fixed budget. When the budget is full the least
+ * recently used page is evicted, approximated with the clock algorithm: a page is marked as used when a
+ * read moves onto it, and the clock hand passes over, and unmarks, used pages before choosing a victim.
+ * Pages can also be prefetched on a background thread, ahead of a ray or slice reaching them.
+ * Rays and slices read many voxels in a row from the same page, so to keep the cost of a read close to
+ * an array lookup, hits and use marks are only recorded when a read is of a different page than the
+ * read before it. The last page read is shared by every thread without synchronisation; a stale value
+ * only records an extra hit and mark, or misses one, which leaves the counts and the eviction order
+ * approximate but never affects the voxels read.
+ * @author Josh Codd.
+ */
+public class BrickCache implements VoxelStore {
+    public static final int PAGE_VOXELS = 1 << VoxelLayout.PAGE_VOXELS_SHIFT;
+    public static final int PAGE_BYTES = PAGE_VOXELS * 2;
+    private static final int PAGE_MASK = PAGE_VOXELS - 1;
+    private static final long IDLE_SECONDS = 10;
+    private final FileChannel channel;
+    private final AtomicReferenceArray<short[]> pages;
+    private final AtomicIntegerArray isUsed;
+    private final AtomicIntegerArray isPrefetching;
+    private final int[] clock;
+    private final long budget;
+    private final ThreadPoolExecutor prefetcher;
+    private int resident = 0;
+    private int hand = 0;
+    private int lastPage = -1;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder pageIns = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache over a file of pages.
+     * @param channel The file of pages, written in the native byte order. It is closed by shutdown.
+     * @param pageCount The number of pages in the file.
+     * @param budget The number of bytes of pages to hold in memory, at least one page.
+     */
+    public BrickCache(FileChannel channel, int pageCount, long budget) {
+        this.channel = channel;
+        this.pages = new AtomicReferenceArray<>(pageCount);
+        this.isUsed = new AtomicIntegerArray(pageCount);
+        this.isPrefetching = new AtomicIntegerArray(pageCount);
+        this.clock = new int[(int) Math.max(1, Math.min(pageCount, budget / PAGE_BYTES))];
+        this.budget = budget;
+        this.prefetcher = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the voxel at the specified index, paging it in if needed.
+     * @param index The index of the voxel.
+     * @return The voxel.
+     */
+    @Override
+    public short get(long index) {
+        return getPage((int) (index >>> VoxelLayout.PAGE_VOXELS_SHIFT))[(int) (index & PAGE_MASK)];
+    }
+
+    /**
+     * Copies a run of voxels that lies within a single brick.
+     * @param index The index of the first voxel to copy.
+     * @param dst The array to copy into.
+     * @param offset The position in the array to start at.
+     * @param count The number of voxels to copy.
+     */
+    @Override
+    public void get(long index, short[] dst, int offset, int count) {
+        short[] voxels = getPage((int) (index >>> VoxelLayout.PAGE_VOXELS_SHIFT));
+        System.arraycopy(voxels, (int) (index & PAGE_MASK), dst, offset, count);
+    }
+
+    /**
+     * Hints that the page holding a voxel will be needed soon, so it is paged in on a background thread.
+     * Does nothing if the page is already in memory or on its way.
+     * @param index The index of a voxel in the page.
+     */
+    public void prefetch(long index) {
+        int page = (int) (index >>> VoxelLayout.PAGE_VOXELS_SHIFT);
+        if (pages.get(page) != null || !isPrefetching.compareAndSet(page, 0, 1)) {
+            return;
+        }
+        prefetches.increment();
+        prefetcher.execute(() -> {
+            try {
+                pageIn(page);
+            } catch (UncheckedIOException e) {
+                // The page is read again when it is actually needed, reporting the error there.
+            } finally {
+                isPrefetching.set(page, 0);
+            }
+        });
+    }
+
+    /**
+     * Stops prefetching and closes the file of pages.
+     */
+    public void shutdown() {
+        prefetcher.shutdownNow();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the number of reads that moved onto a different page and found it in memory.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of reads that had to wait for their page to be read.
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the proportion of reads of a different page that found it in memory.
+     * @return The hit rate, from 0 to 1.
+     */
+    public double getHitRate() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 1 : (double) hits / total;
+    }
+
+    /**
+     * Gets the number of pages read from disk, whether on demand or prefetched.
+     * @return The number of page-ins.
+     */
+    public long getPageIns() {
+        return pageIns.sum();
+    }
+
+    /**
+     * Gets the number of pages requested ahead of time.
+     * @return The number of prefetches.
+     */
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    /**
+     * Gets the number of pages dropped to stay within the budget.
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of bytes of pages currently in memory.
+     * @return The resident bytes.
+     */
+    public synchronized long getResidentBytes() {
+        return (long) resident * PAGE_BYTES;
+    }
+
+    /**
+     * Gets the number of bytes of pages that can be held in memory.
+     * @return The memory budget.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the voxels of a page, paging it in if needed. Hits and the use mark are only recorded when the
+     * page differs from the last page read, and misses always.
+     * @param page The page to get.
+     * @return The voxels of the page.
+     */
+    private short[] getPage(int page) {
+        short[] voxels = pages.get(page);
+        if (voxels == null) {
+            misses.increment();
+            voxels = pageIn(page);
+        } else if (page != lastPage) {
+            hits.increment();
+        }
+        if (page != lastPage) {
+            lastPage = page;
+            if (isUsed.get(page) == 0) {
+                isUsed.set(page, 1);
+            }
+        }
+        return voxels;
+    }
+
+    /**
+     * Reads a page from disk and makes it resident. The file is read outside of the lock, so demand reads
+     * are not held up behind a prefetch.
+     * @param page The page to read.
+     * @return The voxels of the page.
+     */
+    private short[] pageIn(int page) {
+        short[] voxels = pages.get(page);
+        return voxels != null ? voxels : insert(page, read(page));
+    }
+
+    /**
+     * Makes a page resident, evicting another page if the budget is full. Evicted pages are never reused,
+     * so a thread still reading one sees consistent voxels.
+     * @param page The page to insert.
+     * @param voxels The voxels of the page.
+     * @return The voxels of the page, which are those of another thread if it inserted the page first.
+     */
+    private synchronized short[] insert(int page, short[] voxels) {
+        short[] existing = pages.get(page);
+        if (existing != null) {
+            return existing;
+        }
+        int slot;
+        if (resident < clock.length) {
+            slot = resident++;
+        } else {
+            while (isUsed.get(clock[hand]) != 0) {
+                isUsed.set(clock[hand], 0);
+                hand = (hand + 1) % clock.length;
+            }
+            slot = hand;
+            pages.set(clock[slot], null);
+            evictions.increment();
+            hand = (hand + 1) % clock.length;
+        }
+        clock[slot] = page;
+        isUsed.set(page, 1);
+        pages.set(page, voxels);
+        pageIns.increment();
+        return voxels;
+    }
+
+    /**
+     * Reads the voxels of a page from disk.
+     * @param page The page to read.
+     * @return The voxels of the page.
+     */
+    private short[] read(int page) {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_BYTES).order(ByteOrder.nativeOrder());
+        long position = (long) page * PAGE_BYTES;
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Page file ends prematurely.");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        short[] voxels = new short[PAGE_VOXELS];
+        buffer.flip();
+        buffer.asShortBuffer().get(voxels);
+        return voxels;
+    }
+}
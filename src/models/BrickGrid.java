@@ -0,0 +1,119 @@
+package models;
+import java.util.stream.IntStream;
+
+/**
+ * A coarse grid over a volume that records the minimum and maximum voxel within each cubic brick.
+ * Renderers use it to find bricks that cannot contribute to an image and step over them whole.
+ * @author Josh Codd.
+ */
+public class BrickGrid {
+    public static final int BRICK_SHIFT = 3;
+    public static final int BRICK_SIZE = 1 << BRICK_SHIFT;
+    private final int[] lengths;
+    private final int[] strides;
+    private final short[] min;
+    private final short[] max;
+
+    /**
+     * Builds the grid of a volume, processing each layer of bricks in parallel.
+     * @param volume The volume to build the grid over.
+     */
+    public BrickGrid(Volume volume) {
+        int x = volume.getCT_x_axis(), y = volume.getCT_y_axis(), z = volume.getCT_z_axis();
+        lengths = new int[]{bricks(x), bricks(y), bricks(z)};
+        strides = new int[]{1, lengths[View.X_AXIS], lengths[View.X_AXIS] * lengths[View.Y_AXIS]};
+        min = new short[lengths[0] * lengths[1] * lengths[2]];
+        max = new short[min.length];
+
+        IntStream.range(0, lengths[View.Z_AXIS]).parallel().forEach(layer -> {
+            int first = layer * strides[View.Z_AXIS];
+            for (int brick = first; brick < first + strides[View.Z_AXIS]; brick++) {
+                min[brick] = Short.MAX_VALUE;
+                max[brick] = Short.MIN_VALUE;
+            }
+
+            short[] voxels = new short[x];
+            int lastSlice = Math.min(z, (layer + 1) << BRICK_SHIFT);
+            for (int k = layer << BRICK_SHIFT; k < lastSlice; k++) {
+                for (int j = 0; j < y; j++) {
+                    volume.getRow(j, k, voxels);
+                    int row = first + (j >> BRICK_SHIFT) * strides[View.Y_AXIS];
+                    for (int i = 0; i < x; i++) {
+                        short voxel = voxels[i];
+                        int brick = row + (i >> BRICK_SHIFT);
+                        if (voxel < min[brick]) min[brick] = voxel;
+                        if (voxel > max[brick]) max[brick] = voxel;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a grid from minimums and maximums found earlier, e.g. stored in a volume file.
+     * @param x The length of the volume's x axis.
+     * @param y The length of the volume's y axis.
+     * @param z The length of the volume's z axis.
+     * @param min The minimum voxel of every brick, x fastest, then y, then z.
+     * @param max The maximum voxel of every brick, in the same order.
+     */
+    public BrickGrid(int x, int y, int z, short[] min, short[] max) {
+        this.lengths = new int[]{bricks(x), bricks(y), bricks(z)};
+        this.strides = new int[]{1, lengths[View.X_AXIS], lengths[View.X_AXIS] * lengths[View.Y_AXIS]};
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Gets the number of bricks along an axis.
+     * @param axis The axis, as numbered by View.
+     * @return The number of bricks.
+     */
+    public int getLength(int axis) {
+        return lengths[axis];
+    }
+
+    /**
+     * Gets the distance between neighbouring bricks along an axis.
+     * @param axis The axis, as numbered by View.
+     * @return The stride of the axis.
+     */
+    public int getStride(int axis) {
+        return strides[axis];
+    }
+
+    /**
+     * Gets the total number of bricks.
+     * @return The number of bricks.
+     */
+    public int size() {
+        return min.length;
+    }
+
+    /**
+     * Gets the minimum voxel within a brick.
+     * @param brick The index of the brick.
+     * @return The minimum voxel.
+     */
+    public short getMin(int brick) {
+        return min[brick];
+    }
+
+    /**
+     * Gets the maximum voxel within a brick.
+     * @param brick The index of the brick.
+     * @return The maximum voxel.
+     */
+    public short getMax(int brick) {
+        return max[brick];
+    }
+
+    /**
+     * Calculates the number of bricks needed to cover an axis.
+     * @param length The length of the axis.
+     * @return The number of bricks.
+     */
+    private static int bricks(int length) {
+        return (length + BRICK_SIZE - 1) >> BRICK_SHIFT;
+    }
+}
@@ -1,7 +1,7 @@
 package models;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 import java.util.stream.IntStream;
 
 /**
@@ -16,11 +16,32 @@ public class CTViewer {
     private final int SIDE_WIDTH;
     private final int SIDE_HEIGHT;
     private final double BONE_VALUE = 400;
+    private static final int SKIN_MIN = -299;
+    private static final int SKIN_MAX = 50;
     private final Volume ctScan;
-    private double opacity = 0.12;
-    private boolean isGradient = false;
-    private boolean isGradientInterpolation = false;
-    private double lightSourceX = 83;
+    private final ViewSampler[] samplers;
+    private volatile double opacity = 0.12;
+    private volatile boolean isGradient = false;
+    private volatile boolean isGradientInterpolation = false;
+    private volatile boolean isGradientCaching = true;
+    private volatile boolean isIncremental = true;
+    private volatile double lightSourceX = 83;
+    private boolean isProgressive = true;
+    private TileScheduler tiles = new TileScheduler(TileScheduler.DEFAULT_TILE_SIZE, 0);
+    private int progressiveStep = 4;
+    private volatile TransferFunctionTable tfTable;
+    private volatile GreyTable greyTable;
+    private final int[][] pixelBuffers = new int[View.values().length][];
+    private final GBuffer[] gBuffers = new GBuffer[View.values().length];
+    private final RaySegments[] raySegments = new RaySegments[View.values().length];
+    private FrameCache frames = new FrameCache();
+    private double windowLevel = 0;
+    private double windowWidth = 0;
+    private boolean isEmptySpaceSkipping = true;
+    private double terminationThreshold = 1.0 / 512;
+    private long sampledSamples = 0;
+    private long skippedSamples = 0;
+    private long terminatedSamples = 0;
 
     /**
      * Creates a CT viewer.
@@ -32,8 +53,12 @@ public class CTViewer {
         this.TOP_HEIGHT = volume.getCT_y_axis();
         this.FRONT_WIDTH = volume.getCT_x_axis();
         this.FRONT_HEIGHT = volume.getCT_z_axis();
-        this.SIDE_WIDTH = volume.getCT_x_axis();
+        this.SIDE_WIDTH = volume.getCT_y_axis();
         this.SIDE_HEIGHT = volume.getCT_z_axis();
+        this.samplers = new ViewSampler[View.values().length];
+        for (View view : View.values()) {
+            samplers[view.ordinal()] = new ViewSampler(volume, view);
+        }
     }
 
     /**
@@ -44,14 +69,17 @@ public class CTViewer {
      * @param z The z value to get.
      * @return The correct voxel.
      */
-    public short getVoxel(String view, int x, int y, int z) {
-        if (view.equals("top")) {
-            return ctScan.getVoxel(z, y, x);
-        } else if (view.equals("side")) {
-            return ctScan.getVoxel(y, x, z);
-        } else {
-            return ctScan.getVoxel(y, z, x);
-        }
+    public short getVoxel(View view, int x, int y, int z) {
+        return getSampler(view).get(x, y, z);
+    }
+
+    /**
+     * Gets the sampler that steps through the volume for the specified view.
+     * @param view The view/direction to sample from.
+     * @return The sampler for that view.
+     */
+    public ViewSampler getSampler(View view) {
+        return samplers[view.ordinal()];
     }
 
     /**
@@ -60,153 +88,623 @@ public class CTViewer {
      * @param view The direction of CAT scan to view. Options are front, side or top.
      * @param slice The slice to display.
      */
-    public void drawSlice(WritableImage image, String view, int slice) {
-        int width = (int) image.getWidth(), height = (int) image.getHeight();
-        PixelWriter image_writer = image.getPixelWriter();
-        double colour;
-        short voxel;
+    public void drawSlice(PixelBuffer image, View view, int slice) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = getPixelBuffer(view, width * height);
+        ViewSampler sampler = getSampler(view);
+        boolean isLoaded = ctScan.isLoaded();
+        GreyTable grey = getGreyTable();
+        FrameCache.Key key = getGreyKey("slice", view, slice, width, height, grey);
+
+        if (!getFrame(key, pixels)) {
+            renderSlice(sampler, slice, width, height, grey, pixels);
+            putFrame(key, pixels, width * height, isLoaded);
+        }
+        image.setPixels(pixels);
 
+        if (ctScan.isOutOfCore()) {
+            prefetchSlice(sampler, slice - VoxelLayout.PAGE_SIZE / 2);
+            prefetchSlice(sampler, slice + VoxelLayout.PAGE_SIZE / 2);
+        }
+    }
+
+    /**
+     * Draws a slice into the frame cache ahead of time, unless it is already there. Can be called from any
+     * thread, as the slice is drawn into its own buffer. Slices of a volume that is still loading are not
+     * drawn, as they could not be kept.
+     * @param view The direction of CAT scan to view. Options are front, side or top.
+     * @param slice The slice to draw.
+     */
+    public void cacheSlice(View view, int slice) {
+        ViewSampler sampler = getSampler(view);
+        int width = sampler.getWidth(), height = sampler.getHeight();
+        if (!isIncremental || !ctScan.isLoaded()) {
+            return;
+        }
+        GreyTable grey = getGreyTable();
+        FrameCache.Key key = getGreyKey("slice", view, slice, width, height, grey);
+        if (frames.contains(key)) {
+            return;
+        }
+        int[] pixels = new int[width * height];
+        renderSlice(sampler, slice, width, height, grey, pixels);
+        frames.put(key, pixels, pixels.length);
+    }
+
+    /**
+     * Checks if a full size slice is in the frame cache.
+     * @param view The direction of CAT scan to view. Options are front, side or top.
+     * @param slice The slice to check.
+     * @return If the slice is cached.
+     */
+    public boolean isSliceCached(View view, int slice) {
+        ViewSampler sampler = getSampler(view);
+        return frames.contains(getGreyKey("slice", view, slice, sampler.getWidth(), sampler.getHeight(),
+                getGreyTable()));
+    }
+
+    /**
+     * Draws a slice in grey into a buffer of pixels.
+     * @param sampler The sampler of the view the slice is in.
+     * @param slice The slice to draw.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param table The grey table to draw with.
+     * @param pixels The buffer to write pixels to, row by row.
+     */
+    private void renderSlice(ViewSampler sampler, int slice, int width, int height, GreyTable table,
+                             int[] pixels) {
+        int[] grey = table.pixels;
+        long[] widthOffsets = sampler.getWidthOffsets();
         for (int j = 0; j < height; j++) {
+            long rowIndex = sampler.offset(0, j, slice) - widthOffsets[0];
+            int pixel = j * width;
             for (int i = 0; i < width; i++) {
-                voxel = getVoxel(view, i, j, slice);
-                colour = (((float) voxel - (float) ctScan.getMin()) / ((float) (ctScan.getMax() - ctScan.getMin())));
-                colour = Math.max(colour, 0);
-                image_writer.setColor(i, j, Color.color(colour, colour, colour, 1.0));
+                pixels[pixel++] = grey[sampler.get(rowIndex + widthOffsets[i]) - Short.MIN_VALUE];
             } // column loop
         } // row loop
     }
 
+    /**
+     * Hints that the pages of a slice of an out-of-core volume will be needed soon.
+     * @param sampler The sampler of the view the slice is in.
+     * @param slice The slice, which is ignored if it is outside of the volume.
+     */
+    private void prefetchSlice(ViewSampler sampler, int slice) {
+        if (slice < 0 || slice >= sampler.getDepth()) {
+            return;
+        }
+        for (int j = 0; j < sampler.getHeight(); j += VoxelLayout.PAGE_SIZE) {
+            for (int i = 0; i < sampler.getWidth(); i += VoxelLayout.PAGE_SIZE) {
+                ctScan.prefetch(sampler.offset(i, j, slice));
+            }
+        }
+    }
+
     /**
      * Performs maximum intensity projection on the specified image/scan.
+     * Rays step over whole bricks whose maximum is no higher than the maximum found so far.
      * @param image The image to write to.
      * @param view The direction to view the scan/dataset from. i.e front, side or top.
      */
-    public void maximumIntensityProjection(WritableImage image, String view) {
-        PixelWriter image_writer = image.getPixelWriter();
-        int width = (int) image.getWidth(), height = (int) image.getHeight();
-        int depth = (view.equals("top")) ? ctScan.getCT_z_axis() : ctScan.getCT_x_axis();
+    public void maximumIntensityProjection(PixelBuffer image, View view) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = getPixelBuffer(view, width * height);
+        boolean isLoaded = ctScan.isLoaded();
+        GreyTable table = getGreyTable();
+        FrameCache.Key key = getGreyKey("mip", view, -1, width, height, table);
+        if (getFrame(key, pixels)) {
+            image.setPixels(pixels);
+            return;
+        }
+        int[] grey = table.pixels;
+        ViewSampler sampler = getSampler(view);
+        int depth = sampler.getDepth();
+        long[] depthOffsets = sampler.getDepthOffsets();
+        BrickGrid bricks = ctScan.getBrickGrid();
+        int brickXStride = bricks.getStride(view.getWidthAxis());
+        int brickYStride = bricks.getStride(view.getHeightAxis());
+        int brickDepthStride = bricks.getStride(view.getDepthAxis());
 
         for (int j = 0; j < height; j++) {
             for (int i = 0; i < width; i++) {
                 short maximum = ctScan.getMin();
+                long rayIndex = sampler.offset(i, j, 0) - depthOffsets[0];
+                int rayBrick = (i >> BrickGrid.BRICK_SHIFT) * brickXStride
+                        + (j >> BrickGrid.BRICK_SHIFT) * brickYStride;
                 for (int k = 0; k < depth; k++) {
-                    short currentVoxel = getVoxel(view, i, j, k);
+                    if ((k & (BrickGrid.BRICK_SIZE - 1)) == 0
+                            && bricks.getMax(rayBrick + (k >> BrickGrid.BRICK_SHIFT) * brickDepthStride) <= maximum) {
+                        // Nothing in this brick can raise the maximum, so it does not need to be read.
+                        k += BrickGrid.BRICK_SIZE - 1;
+                        continue;
+                    }
+                    short currentVoxel = sampler.get(rayIndex + depthOffsets[k]);
                     if (currentVoxel > maximum){
                         maximum = currentVoxel;
                     }
                 }
-                float colour = (((float) maximum - (float) ctScan.getMin()) / ((float) (ctScan.getMax() - ctScan.getMin())));
-                image_writer.setColor(i, j, Color.color(colour, colour, colour, 1.0));
+                pixels[j * width + i] = grey[maximum - Short.MIN_VALUE];
             }//column
         }//row
+        putFrame(key, pixels, width * height, isLoaded);
+        image.setPixels(pixels);
+    }
+
+    /**
+     * Performs maximum intensity projection for all three views in a single pass over the volume.
+     * The volume is walked row by row, split into slabs of slices that are projected in parallel.
+     * Each slab owns its rows of the front and side projections, while the top projection runs through
+     * every slab, so each slab projects into its own partial top image and these are then reduced.
+     * @param top The image to write the top projection to.
+     * @param front The image to write the front projection to.
+     * @param side The image to write the side projection to.
+     */
+    public void maximumIntensityProjection(PixelBuffer top, PixelBuffer front, PixelBuffer side) {
+        maximumIntensityProjection(top, front, side, () -> false);
+    }
+
+    /**
+     * Performs maximum intensity projection for all three views in a single pass over the volume,
+     * stopping early without writing any image if the projection is cancelled.
+     * @param top The image to write the top projection to.
+     * @param front The image to write the front projection to.
+     * @param side The image to write the side projection to.
+     * @param isCancelled Checked between slices to find if the projection is no longer needed.
+     */
+    public void maximumIntensityProjection(PixelBuffer top, PixelBuffer front, PixelBuffer side,
+                                           BooleanSupplier isCancelled) {
+        boolean isLoaded = ctScan.isLoaded();
+        GreyTable grey = getGreyTable();
+        if (drawCachedFrame(top, View.TOP, "mip", grey) & drawCachedFrame(front, View.FRONT, "mip", grey)
+                & drawCachedFrame(side, View.SIDE, "mip", grey)) {
+            return;
+        }
+        int x = ctScan.getCT_x_axis(), y = ctScan.getCT_y_axis(), z = ctScan.getCT_z_axis();
+        short min = ctScan.getMin();
+        short[] frontMax = new short[z * x];
+        short[] sideMax = new short[z * y];
+        int slabs = Math.min(z, ForkJoinPool.getCommonPoolParallelism() * 4);
+
+        short[] topMax = IntStream.range(0, slabs).parallel().mapToObj(slab -> {
+            short[] partial = new short[x * y];
+            short[] row = new short[x];
+            Arrays.fill(partial, min);
+            for (int k = slab * z / slabs; k < (slab + 1) * z / slabs && !isCancelled.getAsBoolean(); k++) {
+                int frontRow = k * x;
+                Arrays.fill(frontMax, frontRow, frontRow + x, min);
+                for (int j = 0; j < y; j++) {
+                    ctScan.getRow(j, k, row);
+                    int topRow = j * x;
+                    short rowMax = min;
+                    for (int i = 0; i < x; i++) {
+                        short voxel = row[i];
+                        if (voxel > partial[topRow + i]) partial[topRow + i] = voxel;
+                        if (voxel > frontMax[frontRow + i]) frontMax[frontRow + i] = voxel;
+                        if (voxel > rowMax) rowMax = voxel;
+                    }
+                    sideMax[k * y + j] = rowMax;
+                }
+            }
+            return partial;
+        }).reduce((first, second) -> {
+            for (int i = 0; i < first.length; i++) {
+                if (second[i] > first[i]) first[i] = second[i];
+            }
+            return first;
+        }).orElseThrow();
+
+        if (isCancelled.getAsBoolean()) {
+            return;
+        }
+        writeGrey(top, View.TOP, topMax, grey, isLoaded);
+        writeGrey(front, View.FRONT, frontMax, grey, isLoaded);
+        writeGrey(side, View.SIDE, sideMax, grey, isLoaded);
+    }
+
+    /**
+     * Gets the key of a grey frame, which depends on the range of voxel values its grey table shows. The
+     * range is taken from the table rather than the current window, as the statistics of a loading volume
+     * may change after the table was built.
+     * @param kind The kind of frame.
+     * @param view The view the frame is of.
+     * @param slice The slice the frame is of, or -1 for a projection.
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @param grey The grey table the frame is drawn with.
+     * @return The key of the frame.
+     */
+    private FrameCache.Key getGreyKey(String kind, View view, int slice, int width, int height, GreyTable grey) {
+        return new FrameCache.Key(ctScan, kind, view, slice, width, height, grey.lower, grey.range);
+    }
+
+    /**
+     * Draws a grey frame from the frame cache, if it is there.
+     * @param image The image to write to.
+     * @param view The view the frame is of.
+     * @param kind The kind of frame.
+     * @param grey The grey table the frame would be drawn with.
+     * @return If the frame was cached.
+     */
+    private boolean drawCachedFrame(PixelBuffer image, View view, String kind, GreyTable grey) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = getPixelBuffer(view, width * height);
+        if (!getFrame(getGreyKey(kind, view, -1, width, height, grey), pixels)) {
+            return false;
+        }
+        image.setPixels(pixels);
+        return true;
+    }
+
+    /**
+     * Copies a frame from the frame cache, if it is there and rendering is incremental.
+     * @param key The key of the frame.
+     * @param pixels The buffer to copy the pixels to.
+     * @return If the frame was copied.
+     */
+    private boolean getFrame(FrameCache.Key key, int[] pixels) {
+        return isIncremental && frames.get(key, pixels);
+    }
+
+    /**
+     * Keeps a frame in the frame cache, unless the volume was still loading when the frame was started and
+     * so the frame could change.
+     * @param key The key of the frame.
+     * @param pixels The pixels of the frame.
+     * @param length The number of pixels in the frame.
+     * @param isLoaded If the volume had finished loading before the frame was started.
+     */
+    private void putFrame(FrameCache.Key key, int[] pixels, int length, boolean isLoaded) {
+        if (isIncremental && isLoaded) {
+            frames.put(key, pixels, length);
+        }
+    }
+
+    /**
+     * Writes an image of voxel values to screen in grey.
+     * @param image The image to write to.
+     * @param view The view the image is of.
+     * @param voxels The voxel of each pixel, row by row.
+     * @param table The grey table to write with.
+     * @param isLoaded If the volume had finished loading before the voxels were read.
+     */
+    private void writeGrey(PixelBuffer image, View view, short[] voxels, GreyTable table, boolean isLoaded) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = getPixelBuffer(view, width * height);
+        int[] grey = table.pixels;
+        for (int i = 0; i < width * height; i++) {
+            pixels[i] = grey[voxels[i] - Short.MIN_VALUE];
+        }
+        putFrame(getGreyKey("mip", view, -1, width, height, table), pixels, width * height, isLoaded);
+        image.setPixels(pixels);
     }
 
     /**
      * Performs volume rendering on the specified image/scan.
+     * Rays step over whole bricks that cannot contribute to the image, and stop once so little light
+     * passes through that further samples would not change the pixel.
      * @param image The image to write to.
      * @param view The direction to view the scan/dataset from. i.e front, side or top.
      */
-    public WritableImage volumeRender(WritableImage image, String view, String transferFunction) {
-        int width = (int) image.getWidth();
-        int height = (int) image.getHeight();
-        WritableImage image1 = new WritableImage(width, height);
-        PixelWriter writer = image1.getPixelWriter();
-        int depth = (view.equals("top")) ? ctScan.getCT_z_axis() : ctScan.getCT_x_axis();
-
-        IntStream.range(0, height).parallel().forEach(j -> {
-            IntStream.range(0, width).parallel().forEach(i -> {
-                double alphaAccum = 1;
-                double redAccum = 0;
-                double greenAccum = 0;
-                double blueAccum = 0;
-                boolean hitBone = false;
-                double L = 1;
-
-                for (int k = 0; k < depth && !hitBone; k++) {
-                    short currentVoxel = getVoxel(view, i, j, k);
-                    if (currentVoxel >= BONE_VALUE && isGradient) {
-                        L = getDiffuseLighting(view, i, j, k, currentVoxel, height, width, depth);
-                        hitBone = true;
-                    }
+    public void volumeRender(PixelBuffer image, View view, String transferFunction) {
+        volumeRender(image, view, transferFunction, () -> false);
+    }
 
-                    if (!isGradient || hitBone) {
-                        final int RED = 0;
-                        final int GREEN = 1;
-                        final int BLUE = 2;
-                        double[] colour = getTransferFunction(currentVoxel, transferFunction);
-                        double sigma = colour[3];
-                        redAccum = Math.min(Math.max(redAccum + (alphaAccum * sigma * L * colour[RED]), 0), 1);
-                        greenAccum = Math.min(Math.max(greenAccum + (alphaAccum * sigma * L * colour[GREEN]),0), 1);
-                        blueAccum = Math.min(Math.max(blueAccum + (alphaAccum * sigma * L * colour[BLUE]),0), 1);
-                        alphaAccum = alphaAccum * (1 - sigma);
-                    }
-                }
-                writer.setColor(i, j, Color.color(redAccum, greenAccum, blueAccum, 1));
-            });
-        });
-        return image1;
+    /**
+     * Performs volume rendering on the specified image/scan, stopping early if the render is cancelled.
+     * @param image The image to write to, left incomplete if the render is cancelled.
+     * @param view The direction to view the scan/dataset from. i.e front, side or top.
+     * @param transferFunction The name of the transfer function to use.
+     * @param isCancelled Checked before each row to find if the render is no longer needed.
+     */
+    public void volumeRender(PixelBuffer image, View view, String transferFunction, BooleanSupplier isCancelled) {
+        volumeRender(image, view, transferFunction, 1, isCancelled);
+    }
+
+    /**
+     * Performs volume rendering at a reduced resolution, for a quick preview while the user is still
+     * changing settings. Only every step-th pixel of every step-th row is rendered, and is stretched
+     * over the pixels it skipped. Rays also take every step-th sample, with opacity corrected for the
+     * longer distance between samples.
+     * With gradient shading, the surfaces hit by a full quality render are kept for each view. While only
+     * the light source changes, later renders of that view light those surfaces again at full quality
+     * rather than casting rays, whatever the step. Likewise without gradient shading, the rays of a full
+     * quality render are kept as runs of samples, and while only the skin opacity changes later renders of
+     * that view composite those runs again at full quality.
+     * Full quality frames are kept in the frame cache, so a frame already seen with the same settings is
+     * only copied, whatever the step.
+     * @param image The image to write to, left incomplete if the render is cancelled.
+     * @param view The direction to view the scan/dataset from. i.e front, side or top.
+     * @param transferFunction The name of the transfer function to use.
+     * @param step The distance between rendered pixels and samples, from 1 (full quality) to
+     *             TransferFunctionTable.MAX_STEP.
+     * @param isCancelled Checked before each row to find if the render is no longer needed.
+     */
+    public void volumeRender(PixelBuffer image, View view, String transferFunction, int step,
+                             BooleanSupplier isCancelled) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = new int[width * height];
+        // Settings are read once, so the frame is kept under the settings it was rendered with even if a
+        // setter runs part way through.
+        boolean isLoaded = ctScan.isLoaded();
+        boolean isIncremental = this.isIncremental;
+        boolean isGradient = this.isGradient;
+        boolean isInterpolated = isGradient && isGradientInterpolation;
+        boolean isCached = isGradient && isGradientCaching && !ctScan.isOutOfCore();
+        double opacity = this.opacity;
+        double threshold = terminationThreshold;
+        double[] light = getLightSource(isGradient ? lightSourceX : 0);
+        FrameCache.Key key = new FrameCache.Key(ctScan, "volume", view, -1, width, height, transferFunction,
+                opacity, threshold, isGradient, isInterpolated, isCached, light[0]);
+        if (isIncremental && frames.get(key, pixels)) {
+            image.setPixels(pixels);
+            sampledSamples = 0;
+            skippedSamples = 0;
+            terminatedSamples = 0;
+            return;
+        }
+        TransferFunctionTable table = getTransferFunctionTable(transferFunction, opacity);
+        GradientVolume gradients = isCached ? ctScan.getGradientVolume() : null;
+        boolean isFullQuality = step == 1;
+        GBuffer gBuffer = gBuffers[view.ordinal()];
+        RaySegments segments = raySegments[view.ordinal()];
+
+        if (isIncremental && isGradient && gBuffer != null
+                && gBuffer.matches(width, height, table, isInterpolated, gradients)) {
+            // Only the light source can have changed, so light the surfaces of the last render again.
+            tiles.render(width, height, (x0, y0, x1, y1) -> gBuffer.relight(light, pixels, x0, y0, x1, y1),
+                    isCancelled);
+            isFullQuality = true;
+            sampledSamples = 0;
+            skippedSamples = 0;
+            terminatedSamples = 0;
+        } else if (isIncremental && !isGradient && segments != null
+                && segments.matches(width, height, transferFunction, threshold)) {
+            // Only the skin opacity can have changed, so composite the runs of the last render again.
+            float[] rgba = table.getRGBA();
+            tiles.render(width, height, (x0, y0, x1, y1) -> segments.composite(rgba, pixels, x0, y0, x1, y1),
+                    isCancelled);
+            isFullQuality = true;
+            sampledSamples = 0;
+            skippedSamples = 0;
+            terminatedSamples = 0;
+        } else {
+            GBuffer surfaces = isIncremental && isGradient && step == 1
+                    ? new GBuffer(width, height, table, isInterpolated, gradients) : null;
+            RaySegments runs = isIncremental && !isGradient && step == 1
+                    ? new RaySegments(width, height, transferFunction, threshold) : null;
+            RayCaster caster = new RayCaster(this, getSampler(view), pixels, width, height, step,
+                    table.forStep(step).getRGBA(), getSkippableBricks(table, isGradient, runs != null), threshold,
+                    BONE_VALUE, isGradient, isInterpolated, light, gradients, surfaces, runs);
+
+            tiles.render(width, height, caster, isCancelled);
+            if (surfaces != null && !isCancelled.getAsBoolean()) {
+                gBuffers[view.ordinal()] = surfaces;
+            }
+            if (runs != null && !isCancelled.getAsBoolean()) {
+                raySegments[view.ordinal()] = runs.isComplete() ? runs : null;
+            }
+            sampledSamples = caster.getSampled();
+            skippedSamples = caster.getSkipped();
+            terminatedSamples = caster.getTerminated();
+        }
+        if (isIncremental && isLoaded && isFullQuality && !isCancelled.getAsBoolean()) {
+            frames.put(key, pixels, width * height);
+        }
+        image.setPixels(pixels);
+    }
+
+    /**
+     * Finds the bricks that rays can step over without changing the image. Normally these are bricks
+     * that are fully transparent under the transfer function. With gradient shading, rays only stop at
+     * bone, so any brick without bone can be stepped over. When recording the runs of rays, bricks that
+     * contain skin are never stepped over, as they would not be transparent at another opacity.
+     * @param table The transfer function being rendered with.
+     * @param isGradient If gradient shading is used.
+     * @param isRecording If the runs of rays are being recorded.
+     * @return Whether each brick of the volume can be skipped.
+     */
+    private boolean[] getSkippableBricks(TransferFunctionTable table, boolean isGradient, boolean isRecording) {
+        BrickGrid bricks = ctScan.getBrickGrid();
+        boolean[] skippable = new boolean[bricks.size()];
+        if (isEmptySpaceSkipping) {
+            for (int brick = 0; brick < skippable.length; brick++) {
+                skippable[brick] = isGradient
+                        ? bricks.getMax(brick) < BONE_VALUE
+                        : table.isTransparent(bricks.getMin(brick), bricks.getMax(brick))
+                        && !(isRecording && bricks.getMin(brick) < SKIN_MAX && bricks.getMax(brick) > SKIN_MIN);
+            }
+        }
+        return skippable;
     }
 
     /**
      * Calculates the diffuse lighting/shading of a pixel.
+     * @param sampler The sampler of the direction viewing the scan from.
      * @param x The x axis location of the pixel.
      * @param y The y axis location of the pixel.
      * @param z The z or ray depth location of the pixel.
      * @param currentVoxel The voxel at the current position.
-     * @param height The height of the image.
-     * @param width The width of the image.
-     * @param depth Maximum depth of the ray.
      * @return The lighting value for the specified pixel.
      */
-    public double getDiffuseLighting(String view, int x, int y, int z, int currentVoxel, int height, int width, int depth) {
-        Vector surfaceNormal = getSurfaceNormal(view, x, y, z, height, width, depth);
-        Vector intersection = new Vector(x, y, z);
+    public double getDiffuseLighting(ViewSampler sampler, int x, int y, int z, int currentVoxel) {
+        double[] surface = new double[GBuffer.SURFACE_LENGTH];
+        getSurface(sampler, x, y, z, currentVoxel, isGradientInterpolation, surface);
+        return getDiffuseLighting(surface, x, y, getLightSource());
+    }
+
+    /**
+     * Finds the surface a gradient shaded ray hit, that is, its surface normal and exact depth.
+     * @param sampler The sampler of the direction viewing the scan from.
+     * @param x The x axis location of the pixel.
+     * @param y The y axis location of the pixel.
+     * @param z The z or ray depth location of the hit.
+     * @param currentVoxel The voxel at the hit.
+     * @param isInterpolated If the hit is interpolated between the voxel before and at the hit.
+     * @param surface The array to write the x, y and z of the normal and the depth of the hit to.
+     */
+    public void getSurface(ViewSampler sampler, int x, int y, int z, int currentVoxel, boolean isInterpolated,
+                           double[] surface) {
+        double exactZ = z;
 
-        if (isGradientInterpolation && currentVoxel != BONE_VALUE && z > 0) {
+        if (isInterpolated && currentVoxel != BONE_VALUE && z > 0) {
             int prevRay = z - 1;
-            short prevVoxel = getVoxel(view, x, y, prevRay);
-            double exactZ =
-                    linearInterpolationPosition(BONE_VALUE, prevVoxel, currentVoxel, prevRay, z);
-            surfaceNormal = getSurfaceNormal(view, x, y, exactZ, height, width, depth);
-            intersection.setC(exactZ);
+            short prevVoxel = sampler.get(x, y, prevRay);
+            exactZ = linearInterpolationPosition(BONE_VALUE, prevVoxel, currentVoxel, prevRay, z);
+            getSurfaceNormal(sampler, x, y, exactZ, surface);
+        } else {
+            getSurfaceNormal(sampler, x, y, z, surface);
         }
+        surface[GBuffer.DEPTH] = exactZ;
+    }
+
+    /**
+     * Gets the position of the light source, which is fixed for the length of a frame.
+     * @return The x, y and z of the light source, in the image's width, height and depth.
+     */
+    public double[] getLightSource() {
+        return getLightSource(lightSourceX);
+    }
+
+    /**
+     * Gets the position of a light source at the specified point along the width of the image.
+     * @param x The x of the light source.
+     * @return The x, y and z of the light source, in the image's width, height and depth.
+     */
+    private double[] getLightSource(double x) {
+        return new double[]{x, (double) ctScan.getCT_z_axis() / 4, ctScan.getCT_x_axis()};
+    }
+
+    /**
+     * Calculates the diffuse lighting of a surface found by getSurface. Works on primitives alone, so
+     * shading a pixel allocates nothing.
+     * @param surface The normal and depth of the surface.
+     * @param x The x axis location of the pixel.
+     * @param y The y axis location of the pixel.
+     * @param light The position of the light source, as given by getLightSource.
+     * @return The lighting value for the specified pixel.
+     */
+    public static double getDiffuseLighting(double[] surface, int x, int y, double[] light) {
+        double normalX = surface[GBuffer.NORMAL_X];
+        double normalY = surface[GBuffer.NORMAL_Y];
+        double normalZ = surface[GBuffer.NORMAL_Z];
+        double normalLength = Math.sqrt((normalX * normalX) + (normalY * normalY) + (normalZ * normalZ));
+        normalX /= normalLength;
+        normalY /= normalLength;
+        normalZ /= normalLength;
 
-        final double LIGHT_SOURCE_Y = (double) ctScan.getCT_z_axis() / 4;
-        final double LIGHT_SOURCE_Z = ctScan.getCT_x_axis();
-        Vector lightSourcePosition = new Vector(lightSourceX, LIGHT_SOURCE_Y, LIGHT_SOURCE_Z);
-        Vector lightDirection = lightSourcePosition.subtract(intersection);
-        lightDirection.normalize();
-        surfaceNormal.normalize();
-        return Math.max(0, surfaceNormal.dotProduct(lightDirection));
+        double lightX = light[0] - x;
+        double lightY = light[1] - y;
+        double lightZ = light[2] - surface[GBuffer.DEPTH];
+        double lightLength = Math.sqrt((lightX * lightX) + (lightY * lightY) + (lightZ * lightZ));
+        lightX /= lightLength;
+        lightY /= lightLength;
+        lightZ /= lightLength;
+        return Math.max(0, (normalX * lightX) + (normalY * lightY) + (normalZ * lightZ));
+    }
+
+    /**
+     * Calculates the diffuse lighting/shading of a pixel using the precomputed normals of the volume.
+     * When interpolating, the normal is linearly interpolated between the voxel before and at the hit.
+     * @param sampler The sampler of the direction viewing the scan from.
+     * @param gradients The precomputed normals of the volume.
+     * @param x The x axis location of the pixel.
+     * @param y The y axis location of the pixel.
+     * @param z The z or ray depth location of the pixel.
+     * @param index The index of the voxel at the current position.
+     * @param currentVoxel The voxel at the current position.
+     * @return The lighting value for the specified pixel.
+     */
+    public double getCachedDiffuseLighting(ViewSampler sampler, GradientVolume gradients, int x, int y, int z,
+                                           long index, int currentVoxel) {
+        double[] surface = new double[GBuffer.SURFACE_LENGTH];
+        getCachedSurface(sampler, gradients, x, y, z, index, currentVoxel, isGradientInterpolation, surface);
+        return getCachedDiffuseLighting(surface, x, y, getLightSource());
+    }
+
+    /**
+     * Finds the surface a gradient shaded ray hit using the precomputed normals of the volume.
+     * When interpolating, the normal is linearly interpolated between the voxel before and at the hit.
+     * @param sampler The sampler of the direction viewing the scan from.
+     * @param gradients The precomputed normals of the volume.
+     * @param x The x axis location of the pixel.
+     * @param y The y axis location of the pixel.
+     * @param z The z or ray depth location of the hit.
+     * @param index The index of the voxel at the hit.
+     * @param currentVoxel The voxel at the hit.
+     * @param isInterpolated If the hit is interpolated between the voxel before and at the hit.
+     * @param surface The array to write the x, y and z of the normal and the depth of the hit to.
+     */
+    public void getCachedSurface(ViewSampler sampler, GradientVolume gradients, int x, int y, int z, long index,
+                                 int currentVoxel, boolean isInterpolated, double[] surface) {
+        float[] normals = GradientVolume.getNormalTable();
+        View view = sampler.getView();
+        int normal = (gradients.getNormal(index) & 0xffff) * 3;
+        double normalX = normals[normal + view.getWidthAxis()];
+        double normalY = normals[normal + view.getHeightAxis()];
+        double normalZ = normals[normal + view.getDepthAxis()];
+        double exactZ = z;
+
+        if (isInterpolated && currentVoxel != BONE_VALUE && z > 0) {
+            long prevIndex = sampler.offset(x, y, z - 1);
+            exactZ = linearInterpolationPosition(BONE_VALUE, sampler.get(prevIndex), currentVoxel, z - 1, z);
+            double t = exactZ - (z - 1);
+            int prevNormal = (gradients.getNormal(prevIndex) & 0xffff) * 3;
+            normalX = linearInterpolationVoxel(normals[prevNormal + view.getWidthAxis()], normalX, 0, t, 1);
+            normalY = linearInterpolationVoxel(normals[prevNormal + view.getHeightAxis()], normalY, 0, t, 1);
+            normalZ = linearInterpolationVoxel(normals[prevNormal + view.getDepthAxis()], normalZ, 0, t, 1);
+        }
+        surface[GBuffer.NORMAL_X] = normalX;
+        surface[GBuffer.NORMAL_Y] = normalY;
+        surface[GBuffer.NORMAL_Z] = normalZ;
+        surface[GBuffer.DEPTH] = exactZ;
+    }
+
+    /**
+     * Calculates the diffuse lighting of a surface found by getCachedSurface. Works on primitives alone,
+     * so shading a pixel allocates nothing.
+     * @param surface The normal and depth of the surface.
+     * @param x The x axis location of the pixel.
+     * @param y The y axis location of the pixel.
+     * @param light The position of the light source, as given by getLightSource.
+     * @return The lighting value for the specified pixel.
+     */
+    public static double getCachedDiffuseLighting(double[] surface, int x, int y, double[] light) {
+        double normalX = surface[GBuffer.NORMAL_X];
+        double normalY = surface[GBuffer.NORMAL_Y];
+        double normalZ = surface[GBuffer.NORMAL_Z];
+        double lightX = light[0] - x;
+        double lightY = light[1] - y;
+        double lightZ = light[2] - surface[GBuffer.DEPTH];
+        double length = Math.sqrt((normalX * normalX + normalY * normalY + normalZ * normalZ)
+                * (lightX * lightX + lightY * lightY + lightZ * lightZ));
+        return Math.max(0, (normalX * lightX + normalY * lightY + normalZ * lightZ) / length);
     }
 
     /**
      * Calculates and returns the an estimate of the gradient/slope at the specified position, in which the z
      * axis is an integer. This calculation uses both central, forward and backward differance.
-     * @param view The direction to view the scan/dataset from. i.e front, side or top.
+     * @param sampler The sampler of the direction viewing the scan from.
      * @param current The voxel at the position to find the slope for.
-     * @param x1 The x axis position of a voxel before the current.
-     * @param y1 The y axis position of a voxel before the current.
-     * @param z1 The integer z axis position of a voxel before the current.
-     * @param x2 The x axis position of a voxel after the current.
-     * @param y2 The y axis position of a voxel after the current.
-     * @param z2 The integer z axis position of a voxel after the current.
+     * @param base The index of the voxel at the position, less its offset along the altered axis.
+     * @param offsets The offset in storage of every position along the altered axis.
      * @param min The minimum value a altered axis could be. (Normally 0).
      * @param max The maximum value a altered axis could be. (Normally axis length - 1)
      * @param i The axis you are altering.
      * @return The gradient calculated for the specified position.
      */
-    public double getGradient(String view, double current, int x1, int y1, int z1, int x2,
-                              int y2, int z2, int min, int max, int i) {
+    public double getGradient(ViewSampler sampler, double current, long base, long[] offsets, int min,
+                              int max, int i) {
         if (i > min && i < (max - 1)) {
-            double prev = getVoxel(view, x1, y1, z1);
-            double next = getVoxel(view, x2, y2, z2);
+            double prev = sampler.get(base + offsets[i - 1]);
+            double next = sampler.get(base + offsets[i + 1]);
             return next - prev;
         } else if (i <= min) {
-            double next = getVoxel(view, x2, y2, z2);
+            double next = sampler.get(base + offsets[i + 1]);
             return next - current;
         } else {
-            double prev = getVoxel(view, x1, y1, z1);
+            double prev = sampler.get(base + offsets[i - 1]);
             return current - prev;
         }
     }
@@ -214,7 +712,7 @@ public class CTViewer {
     /**
      * Calculates and returns the an estimate of the gradient/slope at the specified position, in which the z
      * axis is a non integer position. This calculation uses both central, forward and backward differance.
-     * @param view The direction to view the scan/dataset from. i.e front, side or top.
+     * @param sampler The sampler of the direction viewing the scan from.
      * @param current The voxel at the position to find the slope for.
      * @param x1 The x axis position of a voxel before the current.
      * @param y1 The y axis position of a voxel before the current.
@@ -227,74 +725,100 @@ public class CTViewer {
      * @param i The axis you are altering.
      * @return The gradient calculated for the specified position.
      */
-    public double getGradient(String view, double current, int x1, int y1, double z1, int x2,
+    public double getGradient(ViewSampler sampler, double current, int x1, int y1, double z1, int x2,
                               int y2, double z2, int min, int max, double i) {
         if (i > min && i < (max - 1)) {
-            double prev = getRealVoxel(view, x1, y1, z1);
-            double next = getRealVoxel(view, x2, y2, z2);
+            double prev = getRealVoxel(sampler, x1, y1, z1);
+            double next = getRealVoxel(sampler, x2, y2, z2);
             return next - prev;
         } else if (i <= min) {
-            double next = getRealVoxel(view, x2, y2, z2);
+            double next = getRealVoxel(sampler, x2, y2, z2);
             return next - current;
         } else {
-            double prev = getRealVoxel(view, x1, y1, z1);
+            double prev = getRealVoxel(sampler, x1, y1, z1);
             return current - prev;
         }
     }
 
     /**
      * Calculates the surface normal for the current voxel at all integer positions.
-     * @param view The scan direction. i.e top, front or side
+     * @param sampler The sampler of the scan direction. i.e top, front or side
      * @param x The x location of voxel.
      * @param y The y location of voxel.
      * @param z The z/ray location of voxel.
-     * @param height The height of the image.
-     * @param width The width of the image.
-     * @param depth Maximum depth of the ray.
      * @return The surface normal of the specified voxel
      */
-    public Vector getSurfaceNormal(String view, int x, int y, int z, int height, int width, int depth) {
-        double xGradient, yGradient, zGradient;
-        short currentVoxel = getVoxel(view, x, y, z);
-        xGradient = getGradient(view, currentVoxel, x-1, y, z, x+1, y, z,0,(width-1),x);
-        yGradient = getGradient(view, currentVoxel, x, y-1, z, x, y+1, z,0,height-1,y);
-        zGradient = getGradient(view, currentVoxel, x, y, z-1, x, y, z+1,0,depth-1, z);
-        return new Vector(xGradient, yGradient, zGradient);
+    public Vector getSurfaceNormal(ViewSampler sampler, int x, int y, int z) {
+        double[] normal = new double[3];
+        getSurfaceNormal(sampler, x, y, z, normal);
+        return new Vector(normal[0], normal[1], normal[2]);
+    }
+
+    /**
+     * Calculates the surface normal for the current voxel at all integer positions, without allocating.
+     * @param sampler The sampler of the scan direction. i.e top, front or side
+     * @param x The x location of voxel.
+     * @param y The y location of voxel.
+     * @param z The z/ray location of voxel.
+     * @param normal The array to write the x, y and z of the surface normal to.
+     */
+    public void getSurfaceNormal(ViewSampler sampler, int x, int y, int z, double[] normal) {
+        long[] widthOffsets = sampler.getWidthOffsets();
+        long[] heightOffsets = sampler.getHeightOffsets();
+        long[] depthOffsets = sampler.getDepthOffsets();
+        long index = sampler.offset(x, y, z);
+        short currentVoxel = sampler.get(index);
+        normal[GBuffer.NORMAL_X] = getGradient(sampler, currentVoxel, index - widthOffsets[x], widthOffsets, 0,
+                sampler.getWidth() - 1, x);
+        normal[GBuffer.NORMAL_Y] = getGradient(sampler, currentVoxel, index - heightOffsets[y], heightOffsets, 0,
+                sampler.getHeight() - 1, y);
+        normal[GBuffer.NORMAL_Z] = getGradient(sampler, currentVoxel, index - depthOffsets[z], depthOffsets, 0,
+                sampler.getDepth() - 1, z);
     }
 
     /**
      * Calculates the surface normal for the current voxel of a non integer position z.
-     * @param view The scan direction. i.e top, front or side
+     * @param sampler The sampler of the scan direction. i.e top, front or side
      * @param x The x location of voxel.
      * @param y The y location of voxel.
      * @param z The exact z/ray location of voxel.
-     * @param height The height of the image.
-     * @param width The width of the image.
-     * @param depth Maximum depth of the ray.
      * @return The surface normal of the specified voxel
      */
-    public Vector getSurfaceNormal(String view, int x, int y, double z, int height, int width, int depth) {
-        double xGradient, yGradient, zGradient;
-        double currentVoxel = getRealVoxel(view, x, y, z);
-        xGradient = getGradient(view, currentVoxel,x-1, y, z, x+1, y, z, 0, width-1, x);
-        yGradient = getGradient(view, currentVoxel, x, y-1, z, x,y+1, z,0,height-1, y);
-        zGradient = getGradient(view, currentVoxel, x, y, z-1, x, y,z+1,1,depth-2, z);
-        return new Vector(xGradient, yGradient, zGradient);
+    public Vector getSurfaceNormal(ViewSampler sampler, int x, int y, double z) {
+        double[] normal = new double[3];
+        getSurfaceNormal(sampler, x, y, z, normal);
+        return new Vector(normal[0], normal[1], normal[2]);
+    }
+
+    /**
+     * Calculates the surface normal for the current voxel of a non integer position z, without allocating.
+     * @param sampler The sampler of the scan direction. i.e top, front or side
+     * @param x The x location of voxel.
+     * @param y The y location of voxel.
+     * @param z The exact z/ray location of voxel.
+     * @param normal The array to write the x, y and z of the surface normal to.
+     */
+    public void getSurfaceNormal(ViewSampler sampler, int x, int y, double z, double[] normal) {
+        int width = sampler.getWidth(), height = sampler.getHeight(), depth = sampler.getDepth();
+        double currentVoxel = getRealVoxel(sampler, x, y, z);
+        normal[GBuffer.NORMAL_X] = getGradient(sampler, currentVoxel,x-1, y, z, x+1, y, z, 0, width-1, x);
+        normal[GBuffer.NORMAL_Y] = getGradient(sampler, currentVoxel, x, y-1, z, x,y+1, z,0,height-1, y);
+        normal[GBuffer.NORMAL_Z] = getGradient(sampler, currentVoxel, x, y, z-1, x, y,z+1,1,depth-2, z);
     }
 
     /**
      * Gets the voxel at a non integer position z.
-     * @param view The direction viewing the ct image from.
+     * @param sampler The sampler of the direction viewing the ct image from.
      * @param x The x value to get.
      * @param y The y value to get.
      * @param z The non integer z value to get.
      * @return Voxel at non-integer position.
      */
-    public double getRealVoxel(String view, int x, int y, double z) {
+    public double getRealVoxel(ViewSampler sampler, int x, int y, double z) {
         int z1 = (int) Math.floor(z);
         int z2 = (int) Math.ceil(z);
-        short v1 = getVoxel(view, x, y, z1);
-        short v2 = getVoxel(view, x, y, z2);
+        short v1 = sampler.get(x, y, z1);
+        short v2 = sampler.get(x, y, z2);
         return linearInterpolationVoxel(v1, v2, z1, z, z2);
     }
 
@@ -328,11 +852,12 @@ public class CTViewer {
      * The default transfer function for the default dataset. Calculates pixel colour from a
      * voxel.
      * @param voxel The voxel to get RGB value for.
+     * @param opacity The opacity of the skin.
      * @return The RGB and opacity value for the pixel.
      */
-    private double[] transferFunction(short voxel) {
+    private double[] transferFunction(short voxel, double opacity) {
         double R, G, B, O;
-        if ((voxel > -299) && (voxel < 50)) {
+        if (isSkin(voxel)) {
             R = 1.0;
             G = 0.79;
             B = 0.6;
@@ -355,11 +880,12 @@ public class CTViewer {
      * The second transfer function for the visible human dataset. Calculates pixel colour from a
      * voxel.
      * @param voxel The voxel to get RGB value for.
+     * @param opacity The opacity of the skin.
      * @return The RGB and opacity value for the pixel.
      */
-    private double[] transferFunctionTwo(short voxel) {
+    private double[] transferFunctionTwo(short voxel, double opacity) {
         double R, G, B, O;
-        if ((voxel > -299) && (voxel < 50)) {
+        if (isSkin(voxel)) {
             R = 1.0;
             G = 0.79;
             B = 0.6;
@@ -377,14 +903,175 @@ public class CTViewer {
      * Handles which transfer function to use based on the name passed in.
      * @param voxel The voxel to use in the transfer function.
      * @param tfName The name of the transfer function to use.
+     * @param opacity The opacity of the skin.
      * @return The result from specified TF.
      */
-    private double[] getTransferFunction(short voxel, String tfName){
+    private double[] getTransferFunction(short voxel, String tfName, double opacity){
         if (tfName.equals("TF1")){
-            return transferFunction(voxel);
+            return transferFunction(voxel, opacity);
         } else {
-            return transferFunctionTwo(voxel);
+            return transferFunctionTwo(voxel, opacity);
+        }
+    }
+
+    /**
+     * Gets the precompiled table for the specified transfer function, rebuilding it only if the
+     * transfer function or skin opacity has changed since it was last built.
+     * @param tfName The name of the transfer function to use.
+     * @param opacity The opacity of the skin.
+     * @return The table of premultiplied colours for every voxel value.
+     */
+    private TransferFunctionTable getTransferFunctionTable(String tfName, double opacity) {
+        TransferFunctionTable table = tfTable;
+        if (table == null || !table.matches(tfName, opacity)) {
+            float[] rgba = new float[TransferFunctionTable.ENTRIES * 4];
+            for (int voxel = Short.MIN_VALUE; voxel <= Short.MAX_VALUE; voxel++) {
+                double[] colour = getTransferFunction((short) voxel, tfName, opacity);
+                int index = TransferFunctionTable.index((short) voxel);
+                double sigma = colour[TransferFunctionTable.ALPHA];
+                rgba[index + TransferFunctionTable.RED] = (float) (colour[TransferFunctionTable.RED] * sigma);
+                rgba[index + TransferFunctionTable.GREEN] = (float) (colour[TransferFunctionTable.GREEN] * sigma);
+                rgba[index + TransferFunctionTable.BLUE] = (float) (colour[TransferFunctionTable.BLUE] * sigma);
+                rgba[index + TransferFunctionTable.ALPHA] = (float) sigma;
+            }
+            table = new TransferFunctionTable(tfName, opacity, rgba);
+            tfTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Gets the table of grey ARGB pixels for every voxel value, building it if the window has changed.
+     * Without a window set, the full range of the volume from its minimum to maximum is shown.
+     * @return The grey table.
+     */
+    private GreyTable getGreyTable() {
+        GreyTable table = greyTable;
+        if (table == null) {
+            float lower = windowWidth > 0 ? (float) (windowLevel - windowWidth / 2) : ctScan.getMin();
+            float range = windowWidth > 0 ? (float) windowWidth : (float) (ctScan.getMax() - ctScan.getMin());
+            table = new GreyTable(lower, range);
+            greyTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Gets the reusable pixel buffer for a view, making sure it is large enough.
+     * @param view The view the buffer is for.
+     * @param length The number of pixels needed.
+     * @return The pixel buffer.
+     */
+    private int[] getPixelBuffer(View view, int length) {
+        int[] buffer = pixelBuffers[view.ordinal()];
+        if (buffer == null || buffer.length < length) {
+            buffer = new int[length];
+            pixelBuffers[view.ordinal()] = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Sets the window of voxel values displayed by slices and maximum intensity projection.
+     * Values below the window are shown black and values above it white.
+     * @param level The voxel value at the centre of the window.
+     * @param width The width of the window. Zero or less shows the full range of the volume.
+     */
+    public void setWindowLevel(double level, double width) {
+        this.windowLevel = level;
+        this.windowWidth = width;
+        this.greyTable = null;
+    }
+
+    /**
+     * Discards the grey table built from the statistics of a volume that was viewed while it loaded, so
+     * that slices are shown with the final range of the volume once it has finished loading. Frames drawn
+     * with the old table are keyed by its range, so they are not served again.
+     */
+    public void refreshStatistics() {
+        this.greyTable = null;
+        Arrays.fill(gBuffers, null);
+        Arrays.fill(raySegments, null);
+    }
+
+    /**
+     * Sets if volume rendering should step over bricks that cannot contribute to the image.
+     * @param isEmptySpaceSkipping If empty space should be skipped.
+     */
+    public void setEmptySpaceSkipping(boolean isEmptySpaceSkipping) {
+        this.isEmptySpaceSkipping = isEmptySpaceSkipping;
+    }
+
+    /**
+     * Sets how much light must still pass through along a ray for it to keep sampling. Once the
+     * accumulated transmittance falls below this, the rest of the ray is skipped.
+     * @param terminationThreshold The minimum transmittance, or 0 to always march the full ray.
+     */
+    public void setTerminationThreshold(double terminationThreshold) {
+        this.terminationThreshold = terminationThreshold;
+    }
+
+    /**
+     * Gets the number of samples taken by the last volume render.
+     * @return The number of samples taken.
+     */
+    public long getSampledSamples() {
+        return sampledSamples;
+    }
+
+    /**
+     * Gets the number of samples stepped over as empty space by the last volume render.
+     * @return The number of samples skipped.
+     */
+    public long getSkippedSamples() {
+        return skippedSamples;
+    }
+
+    /**
+     * Gets the number of samples not taken by the last volume render due to early ray termination.
+     * @return The number of samples not taken.
+     */
+    public long getTerminatedSamples() {
+        return terminatedSamples;
+    }
+
+    /**
+     * Checks if a voxel is soft tissue, the only tissue whose opacity can be changed.
+     * @param voxel The voxel to check.
+     * @return If the voxel is skin.
+     */
+    public static boolean isSkin(short voxel) {
+        return voxel > SKIN_MIN && voxel < SKIN_MAX;
+    }
+
+    /**
+     * Gets the memory held by the runs of rays kept for compositing again when the skin opacity changes.
+     * @return The number of bytes kept across every view.
+     */
+    public long getRaySegmentBytes() {
+        long bytes = 0;
+        for (RaySegments segments : raySegments) {
+            if (segments != null) {
+                bytes += segments.getBytes();
+            }
         }
+        return bytes;
+    }
+
+    /**
+     * Gets the cache of frames drawn by this viewer.
+     * @return The frame cache.
+     */
+    public FrameCache getFrameCache() {
+        return frames;
+    }
+
+    /**
+     * Sets the cache of frames drawn by this viewer, which may be shared with other viewers.
+     * @param frames The frame cache.
+     */
+    public void setFrameCache(FrameCache frames) {
+        this.frames = frames;
     }
 
     /**
@@ -435,6 +1122,80 @@ public class CTViewer {
         return this.isGradientInterpolation;
     }
 
+    /**
+     * Sets if gradient shading should use the precomputed normals of the volume rather than
+     * calculating the gradient of every shaded voxel. The normals are built when first used.
+     * Out-of-core volumes always calculate gradients, as their normals would not fit in memory either.
+     * @param isGradientCaching If precomputed normals should be used.
+     */
+    public void setGradientCaching(boolean isGradientCaching) {
+        this.isGradientCaching = isGradientCaching;
+    }
+
+    /**
+     * Sets if drawing reuses earlier work. Drawn frames are kept in the frame cache, and volume rendering
+     * keeps the surfaces or runs of rays of full quality renders, so that later renders changing only the
+     * light source or skin opacity can reuse them rather than casting rays.
+     * @param isIncremental If frames and renders should be kept and reused.
+     */
+    public void setIncrementalRendering(boolean isIncremental) {
+        this.isIncremental = isIncremental;
+        Arrays.fill(gBuffers, null);
+        Arrays.fill(raySegments, null);
+    }
+
+    /**
+     * Sets how volume rendering splits images into tiles and how many threads render them.
+     * @param tileSize The width and height of a tile in pixels.
+     * @param threads The number of threads to render with, or 0 to share the common fork-join pool.
+     */
+    public void setTiling(int tileSize, int threads) {
+        TileScheduler previous = tiles;
+        tiles = new TileScheduler(tileSize, threads);
+        previous.shutdown();
+    }
+
+    /**
+     * Stops the rendering threads of this viewer and the paging of its volume, once it is no longer shown.
+     */
+    public void shutdown() {
+        tiles.shutdown();
+        ctScan.shutdown();
+    }
+
+    /**
+     * Sets if volume rendering should show a coarse preview before refining to full quality.
+     * @param isProgressive If progressive rendering should be used.
+     */
+    public void setProgressive(boolean isProgressive) {
+        this.isProgressive = isProgressive;
+    }
+
+    /**
+     * Gets if volume rendering should show a coarse preview before refining to full quality.
+     * @return If progressive rendering should be used.
+     */
+    public boolean isProgressive() {
+        return isProgressive;
+    }
+
+    /**
+     * Sets the step of the coarse preview in progressive mode, i.e. every how many pixels and samples
+     * are rendered. Each refinement pass halves the step until it reaches 1.
+     * @param progressiveStep The step, from 1 to TransferFunctionTable.MAX_STEP.
+     */
+    public void setProgressiveStep(int progressiveStep) {
+        this.progressiveStep = Math.max(1, Math.min(progressiveStep, TransferFunctionTable.MAX_STEP));
+    }
+
+    /**
+     * Gets the step of the coarse preview in progressive mode.
+     * @return The step.
+     */
+    public int getProgressiveStep() {
+        return progressiveStep;
+    }
+
     /**
      * Gets the width of the top image.
      * @return The width of the top image.
@@ -490,4 +1251,28 @@ public class CTViewer {
     public void setLightSourceX(int position) {
         this.lightSourceX = position;
     }
+
+    /**
+     * A table of grey ARGB pixels for every voxel value, along with the range of voxel values it shows.
+     */
+    private static final class GreyTable {
+        private final float lower;
+        private final float range;
+        private final int[] pixels = new int[1 << 16];
+
+        /**
+         * Builds a grey table.
+         * @param lower The voxel value shown black.
+         * @param range The range of voxel values from black to white.
+         */
+        private GreyTable(float lower, float range) {
+            this.lower = lower;
+            this.range = range;
+            for (int voxel = Short.MIN_VALUE; voxel <= Short.MAX_VALUE; voxel++) {
+                double colour = ((float) voxel - lower) / range;
+                int grey = (int) Math.round(Math.min(Math.max(colour, 0), 1) * 255);
+                pixels[voxel - Short.MIN_VALUE] = 0xff000000 | (grey << 16) | (grey << 8) | grey;
+            }
+        }
+    }
 }
@@ -0,0 +1,264 @@
+package models;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Holds the voxels of a volume compressed brick by brick, in the bricked layout. Each brick is encoded
+ * in the smallest of these forms that can represent it exactly:
+ * a constant brick stores no voxels at all, only its value;
+ * a delta brick stores every voxel as an 8 or 12-bit difference from the brick's minimum;
+ * a raw brick stores every voxel as 16 bits.
+ * CT scans are mostly air and soft tissue, so most bricks are constant or have a small range. Every
+ * encoding can be read at any position, so voxels are decoded one at a time as they are read, and less
+ * memory has to be read per voxel than with an uncompressed volume.
+ * @author Josh Codd.
+ */
+public class CompressedBricks implements VoxelStore {
+    public static final byte CONSTANT = 0;
+    public static final byte DELTA_8 = 1;
+    public static final byte DELTA_12 = 2;
+    public static final byte RAW = 3;
+    private static final int BRICK_VOXELS_SHIFT = BrickGrid.BRICK_SHIFT * 3;
+    private static final int BRICK_VOXELS = 1 << BRICK_VOXELS_SHIFT;
+    private static final int BRICK_MASK = BRICK_VOXELS - 1;
+    private static final int[] ENCODED_BYTES = {0, BRICK_VOXELS, BRICK_VOXELS * 3 / 2, BRICK_VOXELS * 2};
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private final byte[] encodings;
+    private final short[] bases;
+    private final long[] offsets;
+    private final byte[][] chunks;
+    private final long[] counts = new long[ENCODED_BYTES.length];
+    private final long encodedBytes;
+
+    /**
+     * Compresses the voxels of a volume. Bricks are encoded in parallel, one layer of bricks at a time.
+     * @param volume The volume to compress.
+     * @param layout The bricked layout of the volume being compressed to.
+     */
+    public CompressedBricks(Volume volume, VoxelLayout layout) {
+        int x = volume.getCT_x_axis(), y = volume.getCT_y_axis(), z = volume.getCT_z_axis();
+        int brickCount = (int) (layout.size() >> BRICK_VOXELS_SHIFT);
+        encodings = new byte[brickCount];
+        bases = new short[brickCount];
+        offsets = new long[brickCount];
+
+        BrickGrid grid = volume.getBrickGrid();
+        for (int bz = 0; bz < grid.getLength(View.Z_AXIS); bz++) {
+            for (int by = 0; by < grid.getLength(View.Y_AXIS); by++) {
+                for (int bx = 0; bx < grid.getLength(View.X_AXIS); bx++) {
+                    int gridBrick = bx * grid.getStride(View.X_AXIS) + by * grid.getStride(View.Y_AXIS)
+                            + bz * grid.getStride(View.Z_AXIS);
+                    int brick = brickOf(layout, bx, by, bz);
+                    short min = grid.getMin(gridBrick);
+                    int range = grid.getMax(gridBrick) - min;
+                    encodings[brick] = range == 0 ? CONSTANT : range < 1 << 8 ? DELTA_8
+                            : range < 1 << 12 ? DELTA_12 : RAW;
+                    bases[brick] = min;
+                    counts[encodings[brick]]++;
+                }
+            }
+        }
+
+        // Lay encoded bricks out one after another, never letting a brick straddle two chunks.
+        long position = 0;
+        for (int brick = 0; brick < brickCount; brick++) {
+            int length = ENCODED_BYTES[encodings[brick]];
+            if ((position & CHUNK_MASK) + length > CHUNK_MASK + 1) {
+                position = ((position >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT;
+            }
+            offsets[brick] = position;
+            position += length;
+        }
+        encodedBytes = position;
+        chunks = new byte[(int) ((position + CHUNK_MASK) >>> CHUNK_SHIFT)][];
+        for (int i = 0; i < chunks.length; i++) {
+            long length = Math.min(CHUNK_MASK + 1, position - ((long) i << CHUNK_SHIFT));
+            chunks[i] = new byte[(int) length];
+        }
+
+        IntStream.range(0, grid.getLength(View.Z_AXIS)).parallel().forEach(bz -> {
+            short[] voxels = new short[BRICK_VOXELS];
+            for (int by = 0; by < grid.getLength(View.Y_AXIS); by++) {
+                for (int bx = 0; bx < grid.getLength(View.X_AXIS); bx++) {
+                    int brick = brickOf(layout, bx, by, bz);
+                    if (encodings[brick] == CONSTANT) {
+                        continue;
+                    }
+                    gather(volume, bx, by, bz, bases[brick], voxels, x, y, z);
+                    encode(brick, voxels);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the voxel at the specified index, decoding it from its brick.
+     * @param index The index of the voxel in the bricked layout.
+     * @return The voxel.
+     */
+    @Override
+    public short get(long index) {
+        int brick = (int) (index >>> BRICK_VOXELS_SHIFT);
+        int voxel = (int) (index & BRICK_MASK);
+        switch (encodings[brick]) {
+            case CONSTANT:
+                return bases[brick];
+            case DELTA_8: {
+                long offset = offsets[brick] + voxel;
+                return (short) (bases[brick] + (chunk(offset)[position(offset)] & 0xff));
+            }
+            case DELTA_12: {
+                long offset = offsets[brick] + (voxel >> 1) * 3;
+                byte[] chunk = chunk(offset);
+                int position = position(offset);
+                int delta = (voxel & 1) == 0
+                        ? (chunk[position] & 0xff) | (chunk[position + 1] & 0x0f) << 8
+                        : (chunk[position + 1] & 0xf0) >> 4 | (chunk[position + 2] & 0xff) << 4;
+                return (short) (bases[brick] + delta);
+            }
+            default: {
+                long offset = offsets[brick] + voxel * 2L;
+                byte[] chunk = chunk(offset);
+                int position = position(offset);
+                return (short) ((chunk[position] & 0xff) | chunk[position + 1] << 8);
+            }
+        }
+    }
+
+    /**
+     * Copies a run of voxels that lies within a single brick, decoding them from the brick.
+     * @param index The index of the first voxel to copy.
+     * @param dst The array to copy into.
+     * @param offset The position in the array to start at.
+     * @param count The number of voxels to copy.
+     */
+    @Override
+    public void get(long index, short[] dst, int offset, int count) {
+        int brick = (int) (index >>> BRICK_VOXELS_SHIFT);
+        int voxel = (int) (index & BRICK_MASK);
+        short base = bases[brick];
+        switch (encodings[brick]) {
+            case CONSTANT:
+                Arrays.fill(dst, offset, offset + count, base);
+                break;
+            case DELTA_8: {
+                byte[] chunk = chunk(offsets[brick]);
+                int position = position(offsets[brick]) + voxel;
+                for (int i = offset; i < offset + count; i++) {
+                    dst[i] = (short) (base + (chunk[position++] & 0xff));
+                }
+                break;
+            }
+            default:
+                for (int i = 0; i < count; i++) {
+                    dst[offset + i] = get(index + i);
+                }
+        }
+    }
+
+    /**
+     * Gets the number of bricks stored with an encoding.
+     * @param encoding The encoding, e.g. CONSTANT.
+     * @return The number of bricks.
+     */
+    public long getBrickCount(byte encoding) {
+        return counts[encoding];
+    }
+
+    /**
+     * Gets the total memory used by the compressed volume, including the encoding, minimum and position
+     * of every brick.
+     * @return The number of bytes used.
+     */
+    public long getCompressedBytes() {
+        return encodedBytes + encodings.length * (1L + 2L + 8L);
+    }
+
+    /**
+     * Finds the index of a brick in the bricked layout.
+     * @param layout The bricked layout.
+     * @param bx The x position of the brick.
+     * @param by The y position of the brick.
+     * @param bz The z position of the brick.
+     * @return The index of the brick.
+     */
+    private static int brickOf(VoxelLayout layout, int bx, int by, int bz) {
+        return (int) (layout.address(bx << BrickGrid.BRICK_SHIFT, by << BrickGrid.BRICK_SHIFT,
+                bz << BrickGrid.BRICK_SHIFT) >>> BRICK_VOXELS_SHIFT);
+    }
+
+    /**
+     * Copies the voxels of a brick into an array ordered as within a brick of the bricked layout, x
+     * fastest, then y, then z. Positions beyond the edge of the volume are filled with the brick minimum.
+     * @param volume The volume to copy from.
+     * @param bx The x position of the brick.
+     * @param by The y position of the brick.
+     * @param bz The z position of the brick.
+     * @param base The minimum of the brick.
+     * @param voxels The array to copy into.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     */
+    private static void gather(Volume volume, int bx, int by, int bz, short base, short[] voxels, int x,
+                               int y, int z) {
+        int voxel = 0;
+        for (int k = bz << BrickGrid.BRICK_SHIFT; k < (bz + 1) << BrickGrid.BRICK_SHIFT; k++) {
+            for (int j = by << BrickGrid.BRICK_SHIFT; j < (by + 1) << BrickGrid.BRICK_SHIFT; j++) {
+                for (int i = bx << BrickGrid.BRICK_SHIFT; i < (bx + 1) << BrickGrid.BRICK_SHIFT; i++) {
+                    voxels[voxel++] = i < x && j < y && k < z ? volume.getVoxel(k, j, i) : base;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the voxels of a brick in its encoding.
+     * @param brick The index of the brick.
+     * @param voxels The voxels of the brick, ordered as within a brick of the bricked layout.
+     */
+    private void encode(int brick, short[] voxels) {
+        byte[] chunk = chunk(offsets[brick]);
+        int position = position(offsets[brick]);
+        short base = bases[brick];
+        switch (encodings[brick]) {
+            case DELTA_8:
+                for (short voxel : voxels) {
+                    chunk[position++] = (byte) (voxel - base);
+                }
+                break;
+            case DELTA_12:
+                for (int i = 0; i < BRICK_VOXELS; i += 2, position += 3) {
+                    int even = voxels[i] - base, odd = voxels[i + 1] - base;
+                    chunk[position] = (byte) even;
+                    chunk[position + 1] = (byte) ((even >> 8) | (odd << 4));
+                    chunk[position + 2] = (byte) (odd >> 4);
+                }
+                break;
+            default:
+                for (short voxel : voxels) {
+                    chunk[position++] = (byte) voxel;
+                    chunk[position++] = (byte) (voxel >> 8);
+                }
+        }
+    }
+
+    /**
+     * Gets the chunk holding the byte at an offset.
+     * @param offset The offset of the byte.
+     * @return The chunk.
+     */
+    private byte[] chunk(long offset) {
+        return chunks[(int) (offset >>> CHUNK_SHIFT)];
+    }
+
+    /**
+     * Gets the position of the byte at an offset within its chunk.
+     * @param offset The offset of the byte.
+     * @return The position within the chunk.
+     */
+    private static int position(long offset) {
+        return (int) (offset & CHUNK_MASK);
+    }
+}
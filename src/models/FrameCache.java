@@ -0,0 +1,207 @@
+package models;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps recently drawn frames as ARGB pixels, so that going back to a frame already seen with the same
+ * settings only costs copying its pixels. Frames are keyed by the volume, the kind of frame, the view,
+ * the slice and every setting the frame depends on. The least recently used frames are evicted once the
+ * cache holds more than its budget of bytes. The cache can be shared by several viewers.
+ * @author Josh Codd.
+ */
+public class FrameCache {
+    public static final long DEFAULT_BUDGET = Runtime.getRuntime().maxMemory() / 8;
+    private final long budget;
+    private final LinkedHashMap<Key, int[]> frames = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Identifies a frame by what it was drawn from and with.
+     */
+    public static class Key {
+        private final Volume volume;
+        private final String kind;
+        private final View view;
+        private final int slice;
+        private final int width;
+        private final int height;
+        private final Object[] settings;
+        private final int hash;
+
+        /**
+         * Creates a key.
+         * @param volume The volume the frame is of.
+         * @param kind The kind of frame, such as a slice or a volume render.
+         * @param view The view the frame is of.
+         * @param slice The slice the frame is of, or -1 if it is a projection of the whole volume.
+         * @param width The width of the frame.
+         * @param height The height of the frame.
+         * @param settings Every other setting the pixels of the frame depend on.
+         */
+        public Key(Volume volume, String kind, View view, int slice, int width, int height, Object... settings) {
+            this.volume = volume;
+            this.kind = kind;
+            this.view = view;
+            this.slice = slice;
+            this.width = width;
+            this.height = height;
+            this.settings = settings;
+            this.hash = Objects.hash(System.identityHashCode(volume), kind, view, slice, width, height,
+                    Arrays.hashCode(settings));
+        }
+
+        /**
+         * Checks if another key identifies the same frame.
+         * @param other The other key.
+         * @return If the keys are equal.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return volume == key.volume && kind.equals(key.kind) && view == key.view && slice == key.slice
+                    && width == key.width && height == key.height && Arrays.equals(settings, key.settings);
+        }
+
+        /**
+         * Gets the hash code of the key.
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Creates a cache with the default budget of an eighth of the maximum heap.
+     */
+    public FrameCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a cache.
+     * @param budget The most bytes of pixels to hold.
+     */
+    public FrameCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Copies the pixels of a cached frame, if present.
+     * @param key The frame to look for.
+     * @param pixels The buffer to copy the pixels to, row by row.
+     * @return If the frame was cached.
+     */
+    public synchronized boolean get(Key key, int[] pixels) {
+        int[] frame = frames.get(key);
+        if (frame == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        System.arraycopy(frame, 0, pixels, 0, frame.length);
+        return true;
+    }
+
+    /**
+     * Checks if a frame is cached, without counting a hit or miss or making it recently used.
+     * @param key The frame to look for.
+     * @return If the frame is cached.
+     */
+    public synchronized boolean contains(Key key) {
+        return frames.containsKey(key);
+    }
+
+    /**
+     * Caches a copy of a frame, evicting the least recently used frames if over budget.
+     * @param key The frame being cached.
+     * @param pixels The pixels of the frame, row by row.
+     * @param length The number of pixels in the frame.
+     */
+    public synchronized void put(Key key, int[] pixels, int length) {
+        long size = length * 4L;
+        if (size > budget) {
+            return;
+        }
+        int[] previous = frames.put(key, Arrays.copyOf(pixels, length));
+        if (previous != null) {
+            bytes -= previous.length * 4L;
+        }
+        bytes += size;
+
+        Iterator<Map.Entry<Key, int[]>> eldest = frames.entrySet().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().length * 4L;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes every frame.
+     */
+    public synchronized void clear() {
+        frames.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Gets the number of lookups that found their frame.
+     * @return The number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that did not find their frame.
+     * @return The number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of frames evicted to stay within budget.
+     * @return The number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of frames held.
+     * @return The number of frames.
+     */
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    /**
+     * Gets the memory held by the cached pixels.
+     * @return The number of bytes held.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Describes the state of the cache.
+     * @return The counters and size of the cache.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%d frames, %.1f of %.1f MB, %d hits, %d misses, %d evictions", frames.size(),
+                bytes / 1048576.0, budget / 1048576.0, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,172 @@
+package models;
+import java.util.Arrays;
+
+/**
+ * The surfaces seen by a gradient shaded render, kept so that the image can be lit again without casting
+ * any rays. Gradient shaded rays only composite the first bone they hit, so a pixel is its hit voxel's
+ * colour scaled by the lighting of the hit. For every pixel this holds the exact depth of the hit as a
+ * float, the direction of its surface normal packed into an int with an octahedral mapping of 16 bits per
+ * component, and the voxel hit, whose colour is looked up from the transfer function the buffer was built
+ * with: 10 bytes per pixel. While only the light source moves, each pixel is relit from these alone.
+ * The packed normal is accurate to a few thousandths of a degree, so a relit pixel rarely differs from
+ * a ray cast one, and then by a single level.
+ * @author Josh Codd.
+ */
+public class GBuffer {
+    public static final int NORMAL_X = 0;
+    public static final int NORMAL_Y = 1;
+    public static final int NORMAL_Z = 2;
+    public static final int DEPTH = 3;
+    public static final int SURFACE_LENGTH = 4;
+    private static final int NO_NORMAL = -1;
+    private static final double NORMAL_SCALE = 65534;
+    private final int width;
+    private final int height;
+    private final TransferFunctionTable table;
+    private final boolean isInterpolated;
+    private final GradientVolume gradients;
+    private final float[] depths;
+    private final int[] normals;
+    private final short[] voxels;
+
+    /**
+     * Creates an empty buffer, in which no pixel has hit bone.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param table The transfer function the image is rendered with.
+     * @param isInterpolated If the depth and normal of hits are interpolated.
+     * @param gradients The precomputed normals the image is shaded with, or null if they are calculated.
+     */
+    public GBuffer(int width, int height, TransferFunctionTable table, boolean isInterpolated,
+                   GradientVolume gradients) {
+        this.width = width;
+        this.height = height;
+        this.table = table;
+        this.isInterpolated = isInterpolated;
+        this.gradients = gradients;
+        this.depths = new float[width * height];
+        this.normals = new int[width * height];
+        this.voxels = new short[width * height];
+        Arrays.fill(depths, Float.NaN);
+    }
+
+    /**
+     * Checks if this buffer holds the surfaces of a render with the specified settings.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param table The transfer function the image is rendered with.
+     * @param isInterpolated If the depth and normal of hits are interpolated.
+     * @param gradients The precomputed normals the image is shaded with, or null if they are calculated.
+     * @return If the image can be relit from this buffer.
+     */
+    public boolean matches(int width, int height, TransferFunctionTable table, boolean isInterpolated,
+                           GradientVolume gradients) {
+        return this.width == width && this.height == height && this.table == table
+                && this.isInterpolated == isInterpolated && this.gradients == gradients;
+    }
+
+    /**
+     * Records the surface a pixel's ray hit.
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @param surface The normal and depth of the surface, as found by the viewer.
+     * @param voxel The voxel hit.
+     */
+    public void setHit(int x, int y, double[] surface, short voxel) {
+        int pixel = y * width + x;
+        depths[pixel] = (float) surface[DEPTH];
+        normals[pixel] = encode(surface[NORMAL_X], surface[NORMAL_Y], surface[NORMAL_Z]);
+        voxels[pixel] = voxel;
+    }
+
+    /**
+     * Lights every pixel within a tile from a light source. Pixels whose ray hit nothing are black.
+     * @param light The position of the light source, as given by the viewer.
+     * @param pixels The buffer to write pixels to, row by row.
+     * @param x0 The first column of the tile.
+     * @param y0 The first row of the tile.
+     * @param x1 The column after the last column of the tile.
+     * @param y1 The row after the last row of the tile.
+     */
+    public void relight(double[] light, int[] pixels, int x0, int y0, int x1, int y1) {
+        float[] rgba = table.getRGBA();
+        double[] surface = new double[SURFACE_LENGTH];
+        for (int j = y0; j < y1; j++) {
+            for (int i = x0; i < x1; i++) {
+                int pixel = j * width + i;
+                if (Float.isNaN(depths[pixel])) {
+                    pixels[pixel] = RayCaster.toArgb(0, 0, 0);
+                    continue;
+                }
+                decode(normals[pixel], surface);
+                surface[DEPTH] = depths[pixel];
+                double L = gradients == null
+                        ? CTViewer.getDiffuseLighting(surface, i, j, light)
+                        : CTViewer.getCachedDiffuseLighting(surface, i, j, light);
+                int colour = TransferFunctionTable.index(voxels[pixel]);
+                pixels[pixel] = RayCaster.toArgb(Math.min(L * rgba[colour + TransferFunctionTable.RED], 1),
+                        Math.min(L * rgba[colour + TransferFunctionTable.GREEN], 1),
+                        Math.min(L * rgba[colour + TransferFunctionTable.BLUE], 1));
+            }
+        }
+    }
+
+    /**
+     * Gets the memory held by the buffer.
+     * @return The number of bytes of depths, normals and voxels held.
+     */
+    public long getBytes() {
+        return depths.length * 4L + normals.length * 4L + voxels.length * 2L;
+    }
+
+    /**
+     * Packs the direction of a normal into an int using an octahedral mapping, as in GradientVolume but
+     * with 16 bits per component.
+     * @param x The x component of the normal.
+     * @param y The y component of the normal.
+     * @param z The z component of the normal.
+     * @return The packed direction, or NO_NORMAL if the normal has no length.
+     */
+    private static int encode(double x, double y, double z) {
+        double length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (!(length > 0)) {
+            return NO_NORMAL;
+        }
+        double u = x / length;
+        double v = y / length;
+        if (z < 0) {
+            double foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            v = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = foldedU;
+        }
+        int packedU = (int) Math.round((u * 0.5 + 0.5) * NORMAL_SCALE);
+        int packedV = (int) Math.round((v * 0.5 + 0.5) * NORMAL_SCALE);
+        return (packedU << 16) | packedV;
+    }
+
+    /**
+     * Unpacks the direction of a normal. The lighting only depends on the direction of the normal, so it
+     * is not normalised.
+     * @param packed The packed direction.
+     * @param surface The array to write the x, y and z of the normal to, which are all 0 for NO_NORMAL.
+     */
+    private static void decode(int packed, double[] surface) {
+        if (packed == NO_NORMAL) {
+            surface[NORMAL_X] = 0;
+            surface[NORMAL_Y] = 0;
+            surface[NORMAL_Z] = 0;
+            return;
+        }
+        double u = (packed >>> 16) / NORMAL_SCALE * 2 - 1;
+        double v = (packed & 0xffff) / NORMAL_SCALE * 2 - 1;
+        double z = 1 - Math.abs(u) - Math.abs(v);
+        if (z < 0) {
+            double unfoldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            v = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = unfoldedU;
+        }
+        surface[NORMAL_X] = u;
+        surface[NORMAL_Y] = v;
+        surface[NORMAL_Z] = z;
+    }
+}
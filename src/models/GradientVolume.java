@@ -0,0 +1,144 @@
+package models;
+import java.util.stream.IntStream;
+
+/**
+ * A precomputed volume of surface normals, used by gradient shading instead of calculating the gradient
+ * of every shaded voxel as it is rendered. The gradient of every voxel is found by central difference,
+ * with forward and backward difference at the edges, then stored as a unit normal packed into 16 bits
+ * using an octahedral mapping (8 bits per coordinate).
+ * @author Josh Codd.
+ */
+public class GradientVolume {
+    private static final int ENTRIES = 1 << 16;
+    private static final float[] NORMALS = createNormalTable();
+    private final VoxelBuffer normals;
+
+    /**
+     * Builds the normals of a volume, processing slices in parallel.
+     * @param volume The volume to find the normals of.
+     */
+    public GradientVolume(Volume volume) {
+        int x = volume.getCT_x_axis(), y = volume.getCT_y_axis(), z = volume.getCT_z_axis();
+        VoxelLayout layout = volume.getLayout();
+        long[] xOffsets = layout.getOffsets(View.X_AXIS);
+        long[] yOffsets = layout.getOffsets(View.Y_AXIS);
+        long[] zOffsets = layout.getOffsets(View.Z_AXIS);
+        normals = VoxelBuffer.allocate(layout.size());
+
+        IntStream.range(0, z).parallel().forEach(k -> {
+            for (int j = 0; j < y; j++) {
+                for (int i = 0; i < x; i++) {
+                    long index = xOffsets[i] + yOffsets[j] + zOffsets[k];
+                    short current = volume.getVoxel(index);
+                    double xGradient = difference(volume, current, index - xOffsets[i], xOffsets, i);
+                    double yGradient = difference(volume, current, index - yOffsets[j], yOffsets, j);
+                    double zGradient = difference(volume, current, index - zOffsets[k], zOffsets, k);
+                    normals.put(index, encode(xGradient, yGradient, zGradient));
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a gradient volume from normals built earlier, e.g. stored in a volume file.
+     * @param normals The packed normals, in the layout of the volume they belong to.
+     */
+    public GradientVolume(VoxelBuffer normals) {
+        this.normals = normals;
+    }
+
+    /**
+     * Gets the packed normal of the voxel at an index into the volume's storage.
+     * @param index The index of the voxel.
+     * @return The packed normal, to be decoded using getNormalTable.
+     */
+    public short getNormal(long index) {
+        return normals.get(index);
+    }
+
+    /**
+     * Gets the table of unit normals for every packed normal. The x, y and z axis components of a packed
+     * normal n are at ((n & 0xffff) * 3) and the two positions following it.
+     * @return The normal table.
+     */
+    public static float[] getNormalTable() {
+        return NORMALS;
+    }
+
+    /**
+     * Calculates the gradient along an axis, with the same edge rules as CTViewer.getGradient.
+     * @param volume The volume to find the gradient of.
+     * @param current The voxel to find the gradient at.
+     * @param base The index of that voxel, less its offset along the axis.
+     * @param offsets The offset in storage of every position along the axis.
+     * @param i The position of the voxel along the axis.
+     * @return The gradient.
+     */
+    private static double difference(Volume volume, short current, long base, long[] offsets, int i) {
+        int max = offsets.length - 1;
+        if (i > 0 && i < (max - 1)) {
+            return volume.getVoxel(base + offsets[i + 1]) - volume.getVoxel(base + offsets[i - 1]);
+        } else if (i <= 0) {
+            return volume.getVoxel(base + offsets[i + 1]) - current;
+        } else {
+            return current - volume.getVoxel(base + offsets[i - 1]);
+        }
+    }
+
+    /**
+     * Packs the direction of a vector into 16 bits using an octahedral mapping.
+     * @param x The x component.
+     * @param y The y component.
+     * @param z The z component.
+     * @return The packed direction.
+     */
+    private static short encode(double x, double y, double z) {
+        double length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length == 0) {
+            z = 1;
+            length = 1;
+        }
+        double u = x / length;
+        double v = y / length;
+        if (z < 0) {
+            double foldedU = (1 - Math.abs(v)) * signNotZero(u);
+            v = (1 - Math.abs(u)) * signNotZero(v);
+            u = foldedU;
+        }
+        int packedU = (int) Math.round((u * 0.5 + 0.5) * 255);
+        int packedV = (int) Math.round((v * 0.5 + 0.5) * 255);
+        return (short) ((packedU << 8) | packedV);
+    }
+
+    /**
+     * Gets the sign of a value, treating zero as positive so that folded directions stay on an edge.
+     * @param value The value.
+     * @return 1 if the value is zero or more, otherwise -1.
+     */
+    private static double signNotZero(double value) {
+        return value >= 0 ? 1 : -1;
+    }
+
+    /**
+     * Decodes every possible packed normal into a unit normal.
+     * @return The x, y and z components of every packed normal, three per normal.
+     */
+    private static float[] createNormalTable() {
+        float[] table = new float[ENTRIES * 3];
+        for (int packed = 0; packed < ENTRIES; packed++) {
+            double u = (packed >>> 8) / 255.0 * 2 - 1;
+            double v = (packed & 0xff) / 255.0 * 2 - 1;
+            double z = 1 - Math.abs(u) - Math.abs(v);
+            if (z < 0) {
+                double unfoldedU = (1 - Math.abs(v)) * signNotZero(u);
+                v = (1 - Math.abs(u)) * signNotZero(v);
+                u = unfoldedU;
+            }
+            double length = Math.sqrt(u * u + v * v + z * z);
+            table[packed * 3] = (float) (u / length);
+            table[packed * 3 + 1] = (float) (v / length);
+            table[packed * 3 + 2] = (float) (z / length);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,30 @@
+package models;
+
+/**
+ * Receives the progress of a volume as it loads, and can stop the load part way through.
+ * Progress is reported from the threads doing the loading.
+ * @author Josh Codd.
+ */
+public interface LoadProgress {
+
+    /**
+     * Called each time slices of the volume have been loaded.
+     * @param slices The number of slices just loaded.
+     * @param bytes The number of bytes of the file just read.
+     */
+    void slicesLoaded(int slices, long bytes);
+
+    /**
+     * Called once the first slice of a volume loaded slice by slice is present, so that the volume can be
+     * viewed while the rest of it loads. Until the load finishes, only slices can be drawn, and the
+     * statistics of the volume are those of the first slice.
+     * @param volume The volume being loaded.
+     */
+    void previewLoaded(Volume volume);
+
+    /**
+     * Checks if the load is no longer needed. A cancelled load stops with a CancellationException.
+     * @return If the load has been cancelled.
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,28 @@
+package models;
+
+/**
+ * A rectangle of ARGB pixels that frames are drawn into. Lets the viewer draw without depending on how
+ * the pixels are shown, whether in a JavaFX image on screen or in a plain array when rendering without
+ * a display.
+ * @author Josh Codd.
+ */
+public interface PixelBuffer {
+
+    /**
+     * Gets the width of the buffer.
+     * @return The width in pixels.
+     */
+    int getWidth();
+
+    /**
+     * Gets the height of the buffer.
+     * @return The height in pixels.
+     */
+    int getHeight();
+
+    /**
+     * Sets every pixel of the buffer.
+     * @param pixels The opaque ARGB pixels, row by row. Only the first width * height are used.
+     */
+    void setPixels(int[] pixels);
+}
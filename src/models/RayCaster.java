@@ -0,0 +1,266 @@
+package models;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Casts the rays of a single volume render into a buffer of ARGB pixels. All settings, including the
+ * position of the light source, are captured when the caster is created, so a frame is rendered
+ * consistently even if they change part way through. Casting a ray allocates nothing.
+ * @author Josh Codd.
+ */
+public class RayCaster implements TileRenderer {
+    private final CTViewer viewer;
+    private final ViewSampler sampler;
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int step;
+    private final long[] depthOffsets;
+    private final float[] rgba;
+    private final boolean[] skippable;
+    private final int brickXStride;
+    private final int brickYStride;
+    private final int brickDepthStride;
+    private final double threshold;
+    private final double boneValue;
+    private final boolean isGradient;
+    private final boolean isInterpolated;
+    private final boolean isOutOfCore;
+    private final Volume volume;
+    private final GradientVolume gradients;
+    private final GBuffer surfaces;
+    private final RaySegments segments;
+    private final double[] light;
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder terminated = new LongAdder();
+
+    /**
+     * Creates a ray caster for one frame.
+     * @param viewer The viewer to light bone hits with.
+     * @param sampler The sampler of the view being rendered.
+     * @param pixels The buffer to write pixels to, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param step The distance between rendered pixels and samples, 1 for full quality.
+     * @param rgba The premultiplied colours of the transfer function, corrected for the step.
+     * @param skippable Whether each brick of the volume can be stepped over.
+     * @param threshold The transmittance below which rays stop.
+     * @param boneValue The voxel value at which gradient shaded rays stop.
+     * @param isGradient If gradient shading is used.
+     * @param isInterpolated If gradient shaded hits are interpolated between the voxel before and at the hit.
+     * @param light The position of the light source, as given by CTViewer.getLightSource.
+     * @param gradients The precomputed normals to shade with, or null to calculate them.
+     * @param surfaces The buffer to record the surfaces hit by gradient shaded rays to, or null if they
+     *                 are not kept. Only recorded at full quality.
+     * @param segments The segments to record the runs of composited rays to, or null if they are not kept.
+     *                 Only recorded at full quality, with skippable bricks that contain no skin.
+     */
+    public RayCaster(CTViewer viewer, ViewSampler sampler, int[] pixels, int width, int height, int step,
+                     float[] rgba, boolean[] skippable, double threshold, double boneValue, boolean isGradient,
+                     boolean isInterpolated, double[] light, GradientVolume gradients, GBuffer surfaces,
+                     RaySegments segments) {
+        Volume volume = viewer.getCtScan();
+        BrickGrid bricks = volume.getBrickGrid();
+        View view = sampler.getView();
+        this.viewer = viewer;
+        this.sampler = sampler;
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.depth = sampler.getDepth();
+        this.step = step;
+        this.depthOffsets = sampler.getDepthOffsets();
+        this.rgba = rgba;
+        this.skippable = skippable;
+        this.brickXStride = bricks.getStride(view.getWidthAxis());
+        this.brickYStride = bricks.getStride(view.getHeightAxis());
+        this.brickDepthStride = bricks.getStride(view.getDepthAxis());
+        this.threshold = threshold;
+        this.boneValue = boneValue;
+        this.isGradient = isGradient;
+        this.isInterpolated = isInterpolated;
+        this.gradients = gradients;
+        this.surfaces = surfaces;
+        this.segments = segments;
+        this.light = light;
+        this.volume = volume;
+        this.isOutOfCore = volume.isOutOfCore();
+    }
+
+    /**
+     * Casts the rays of every step-th pixel within a tile, stretching each over the pixels it skipped.
+     * @param x0 The first column of the tile.
+     * @param y0 The first row of the tile.
+     * @param x1 The column after the last column of the tile.
+     * @param y1 The row after the last row of the tile.
+     */
+    @Override
+    public void renderTile(int x0, int y0, int x1, int y1) {
+        long tileSampled = 0, tileSkipped = 0, tileTerminated = 0;
+        double[] surface = new double[GBuffer.SURFACE_LENGTH];
+        RaySegments.Tile rays = segments == null ? null : segments.startTile(rgba, x0, y0, x1, y1);
+
+        for (int j = align(y0); j < y1; j += step) {
+            for (int i = align(x0); i < x1; i += step) {
+                double alphaAccum = 1;
+                double redAccum = 0;
+                double greenAccum = 0;
+                double blueAccum = 0;
+                boolean hitBone = false;
+                double L = 1;
+                long rayIndex = sampler.offset(i, j, 0) - depthOffsets[0];
+                int rayBrick = (i >> BrickGrid.BRICK_SHIFT) * brickXStride
+                        + (j >> BrickGrid.BRICK_SHIFT) * brickYStride;
+                int k = 0;
+                int rayPage = -1;
+                if (rays != null) {
+                    rays.startRay(i, j);
+                }
+
+                while (k < depth && !hitBone && alphaAccum >= threshold) {
+                    int brickDepth = k >> BrickGrid.BRICK_SHIFT;
+                    if (skippable[rayBrick + brickDepth * brickDepthStride]) {
+                        int next = Math.min((brickDepth + 1) << BrickGrid.BRICK_SHIFT, depth);
+                        tileSkipped += next - k;
+                        k = next;
+                        continue;
+                    }
+
+                    if (isOutOfCore && k >> VoxelLayout.PAGE_SHIFT != rayPage) {
+                        // Entering a new page, so ask for the next page along the ray ahead of time.
+                        rayPage = k >> VoxelLayout.PAGE_SHIFT;
+                        int ahead = k + VoxelLayout.PAGE_SIZE;
+                        if (ahead < depth) {
+                            volume.prefetch(rayIndex + depthOffsets[ahead]);
+                        }
+                    }
+
+                    long index = rayIndex + depthOffsets[k];
+                    short currentVoxel = sampler.get(index);
+                    if (currentVoxel >= boneValue && isGradient) {
+                        if (gradients == null) {
+                            viewer.getSurface(sampler, i, j, k, currentVoxel, isInterpolated, surface);
+                            L = CTViewer.getDiffuseLighting(surface, i, j, light);
+                        } else {
+                            viewer.getCachedSurface(sampler, gradients, i, j, k, index, currentVoxel, isInterpolated,
+                                    surface);
+                            L = CTViewer.getCachedDiffuseLighting(surface, i, j, light);
+                        }
+                        if (surfaces != null) {
+                            surfaces.setHit(i, j, surface, currentVoxel);
+                        }
+                        hitBone = true;
+                    }
+
+                    if (!isGradient || hitBone) {
+                        if (rays != null) {
+                            rays.add(currentVoxel);
+                        }
+                        int colour = TransferFunctionTable.index(currentVoxel);
+                        double sigma = rgba[colour + TransferFunctionTable.ALPHA];
+                        redAccum = Math.min(redAccum + (alphaAccum * L * rgba[colour + TransferFunctionTable.RED]), 1);
+                        greenAccum = Math.min(greenAccum + (alphaAccum * L * rgba[colour + TransferFunctionTable.GREEN]), 1);
+                        blueAccum = Math.min(blueAccum + (alphaAccum * L * rgba[colour + TransferFunctionTable.BLUE]), 1);
+                        alphaAccum = alphaAccum * (1 - sigma);
+                    }
+                    tileSampled++;
+                    k += step;
+                }
+                if (!hitBone && k < depth) {
+                    tileTerminated += depth - k;
+                }
+                if (rays != null) {
+                    recordRest(rays, rayIndex, rayBrick, k);
+                    rays.endRay();
+                }
+                fill(i, j, toArgb(redAccum, greenAccum, blueAccum));
+            }
+        }
+        if (rays != null) {
+            rays.finish();
+        }
+        sampled.add(tileSampled);
+        skipped.add(tileSkipped);
+        terminated.add(tileTerminated);
+    }
+
+    /**
+     * Gets the number of samples taken so far.
+     * @return The number of samples taken.
+     */
+    public long getSampled() {
+        return sampled.sum();
+    }
+
+    /**
+     * Gets the number of samples stepped over as empty space so far.
+     * @return The number of samples skipped.
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Gets the number of samples not taken due to early ray termination so far.
+     * @return The number of samples not taken.
+     */
+    public long getTerminated() {
+        return terminated.sum();
+    }
+
+    /**
+     * Converts colour components into an opaque ARGB pixel.
+     * @param red The red component, from 0 to 1.
+     * @param green The green component, from 0 to 1.
+     * @param blue The blue component, from 0 to 1.
+     * @return The ARGB pixel.
+     */
+    public static int toArgb(double red, double green, double blue) {
+        return 0xff000000 | ((int) Math.round(red * 255) << 16) | ((int) Math.round(green * 255) << 8)
+                | (int) Math.round(blue * 255);
+    }
+
+    /**
+     * Records the samples of a full quality ray past where it stopped, up to where it would stop however
+     * transparent its skin was.
+     * @param rays The recorder of the tile.
+     * @param rayIndex The index of the voxel before the start of the ray.
+     * @param rayBrick The position of the ray's first brick within the brick grid.
+     * @param k The first sample not yet taken.
+     */
+    private void recordRest(RaySegments.Tile rays, long rayIndex, int rayBrick, int k) {
+        while (k < depth && rays.getOpaqueAlpha() >= threshold) {
+            int brickDepth = k >> BrickGrid.BRICK_SHIFT;
+            if (skippable[rayBrick + brickDepth * brickDepthStride]) {
+                k = Math.min((brickDepth + 1) << BrickGrid.BRICK_SHIFT, depth);
+                continue;
+            }
+            rays.add(sampler.get(rayIndex + depthOffsets[k]));
+            k++;
+        }
+    }
+
+    /**
+     * Rounds a position up to the next rendered pixel.
+     * @param position The position within the image.
+     * @return The first rendered pixel at or after the position.
+     */
+    private int align(int position) {
+        return (position + step - 1) / step * step;
+    }
+
+    /**
+     * Fills the block of pixels a rendered pixel stands for.
+     * @param i The column of the rendered pixel.
+     * @param j The row of the rendered pixel.
+     * @param argb The colour of the pixel.
+     */
+    private void fill(int i, int j, int argb) {
+        for (int y = j; y < Math.min(j + step, height); y++) {
+            for (int x = i; x < Math.min(i + step, width); x++) {
+                pixels[y * width + x] = argb;
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package models;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rays of a full quality render, classified into runs so that the image can be composited again for
+ * a different skin opacity without sampling the volume. Only skin depends on the opacity, and air adds
+ * nothing to a ray, so each ray is kept as the runs of consecutive non-air samples that share a colour:
+ * runs of skin, and runs of other tissue such as bone whose colour does not change with the opacity.
+ * Each run is a single int holding a voxel of the run, whose colour is looked up from the current
+ * transfer function, in its top 16 bits and the number of samples in its bottom 16 bits.
+ * A ray is kept up to where it would stop under any opacity, that is until the light passing through
+ * everything but skin falls below the termination threshold.
+ * @author Josh Codd.
+ */
+public class RaySegments {
+    public static final long MAX_BYTES = 64L << 20;
+    private static final int MAX_RUN = 0xffff;
+    private final int width;
+    private final int height;
+    private final String transferFunction;
+    private final double threshold;
+    private final int[][] pixelRuns;
+    private final int[] pixelStarts;
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile boolean isOverflowed = false;
+
+    /**
+     * Records the runs of the rays within a single tile, as they are cast by one thread.
+     */
+    public class Tile {
+        private final float[] rgba;
+        private int[] runs = new int[256];
+        private int length = 0;
+        private int rayStart;
+        private int pixel;
+        private double opaqueAlpha;
+        private final int[] pixels;
+        private final int[] starts;
+        private int rays = 0;
+
+        /**
+         * Creates a recorder for a tile.
+         * @param rgba The colours of the transfer function the tile is rendered with.
+         * @param pixelCount The number of pixels within the tile.
+         */
+        private Tile(float[] rgba, int pixelCount) {
+            this.rgba = rgba;
+            this.pixels = new int[pixelCount];
+            this.starts = new int[pixelCount];
+        }
+
+        /**
+         * Starts recording the ray of a pixel.
+         * @param x The column of the pixel.
+         * @param y The row of the pixel.
+         */
+        public void startRay(int x, int y) {
+            pixel = y * width + x;
+            rayStart = length;
+            opaqueAlpha = 1;
+            append(0);
+        }
+
+        /**
+         * Records the next sample along the ray.
+         * @param voxel The voxel sampled.
+         */
+        public void add(short voxel) {
+            boolean isSkin = CTViewer.isSkin(voxel);
+            int colour = TransferFunctionTable.index(voxel);
+            double sigma = rgba[colour + TransferFunctionTable.ALPHA];
+            if (!isSkin && sigma == 0) {
+                return;
+            }
+            if (!isSkin) {
+                opaqueAlpha = opaqueAlpha * (1 - sigma);
+            }
+
+            if (length > rayStart + 1) {
+                int last = runs[length - 1];
+                short lastVoxel = (short) (last >> 16);
+                if ((last & MAX_RUN) < MAX_RUN && isSkin == CTViewer.isSkin(lastVoxel)
+                        && (isSkin || isSameColour(TransferFunctionTable.index(lastVoxel), colour))) {
+                    runs[length - 1] = last + 1;
+                    return;
+                }
+            }
+            append((voxel << 16) | 1);
+            runs[rayStart]++;
+        }
+
+        /**
+         * Gets how much light would still pass along the ray if skin were fully transparent.
+         * @return The transmittance of everything but skin recorded so far.
+         */
+        public double getOpaqueAlpha() {
+            return opaqueAlpha;
+        }
+
+        /**
+         * Finishes recording the ray of the current pixel.
+         */
+        public void endRay() {
+            pixels[rays] = pixel;
+            starts[rays] = rayStart;
+            rays++;
+        }
+
+        /**
+         * Finishes recording the tile, keeping its runs unless the segments have grown too large.
+         */
+        public void finish() {
+            int[] trimmed = Arrays.copyOf(runs, length);
+            if (bytes.addAndGet(length * 4L + rays * 8L) > MAX_BYTES) {
+                isOverflowed = true;
+                return;
+            }
+            for (int i = 0; i < rays; i++) {
+                pixelRuns[pixels[i]] = trimmed;
+                pixelStarts[pixels[i]] = starts[i];
+            }
+        }
+
+        /**
+         * Checks if two entries of the transfer function have the same colour and opacity.
+         * @param a The index of the first entry.
+         * @param b The index of the second entry.
+         * @return If the entries are equal.
+         */
+        private boolean isSameColour(int a, int b) {
+            return rgba[a + TransferFunctionTable.RED] == rgba[b + TransferFunctionTable.RED]
+                    && rgba[a + TransferFunctionTable.GREEN] == rgba[b + TransferFunctionTable.GREEN]
+                    && rgba[a + TransferFunctionTable.BLUE] == rgba[b + TransferFunctionTable.BLUE]
+                    && rgba[a + TransferFunctionTable.ALPHA] == rgba[b + TransferFunctionTable.ALPHA];
+        }
+
+        /**
+         * Appends an int to the runs of the tile, growing them if needed.
+         * @param value The value to append.
+         */
+        private void append(int value) {
+            if (length == runs.length) {
+                runs = Arrays.copyOf(runs, runs.length * 2);
+            }
+            runs[length++] = value;
+        }
+    }
+
+    /**
+     * Creates empty segments for an image.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param transferFunction The name of the transfer function the image is rendered with.
+     * @param threshold The transmittance below which rays stop.
+     */
+    public RaySegments(int width, int height, String transferFunction, double threshold) {
+        this.width = width;
+        this.height = height;
+        this.transferFunction = transferFunction;
+        this.threshold = threshold;
+        this.pixelRuns = new int[width * height][];
+        this.pixelStarts = new int[width * height];
+        bytes.addAndGet(width * height * 8L);
+    }
+
+    /**
+     * Checks if these segments hold the rays of a render with the specified settings, whatever its opacity.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param transferFunction The name of the transfer function the image is rendered with.
+     * @param threshold The transmittance below which rays stop.
+     * @return If the image can be composited from these segments.
+     */
+    public boolean matches(int width, int height, String transferFunction, double threshold) {
+        return this.width == width && this.height == height && this.transferFunction.equals(transferFunction)
+                && this.threshold == threshold;
+    }
+
+    /**
+     * Starts recording a tile of rays.
+     * @param rgba The colours of the transfer function the tile is rendered with.
+     * @param x0 The first column of the tile.
+     * @param y0 The first row of the tile.
+     * @param x1 The column after the last column of the tile.
+     * @param y1 The row after the last row of the tile.
+     * @return The recorder of the tile, or null if the segments have grown too large to keep.
+     */
+    public Tile startTile(float[] rgba, int x0, int y0, int x1, int y1) {
+        return isOverflowed ? null : new Tile(rgba, (x1 - x0) * (y1 - y0));
+    }
+
+    /**
+     * Checks if every ray has been recorded without the segments growing too large.
+     * @return If the segments can be kept.
+     */
+    public boolean isComplete() {
+        return !isOverflowed;
+    }
+
+    /**
+     * Composites every pixel within a tile from its runs, in the same way as the ray caster.
+     * @param rgba The colours of the transfer function, at the current opacity.
+     * @param pixels The buffer to write pixels to, row by row.
+     * @param x0 The first column of the tile.
+     * @param y0 The first row of the tile.
+     * @param x1 The column after the last column of the tile.
+     * @param y1 The row after the last row of the tile.
+     */
+    public void composite(float[] rgba, int[] pixels, int x0, int y0, int x1, int y1) {
+        for (int j = y0; j < y1; j++) {
+            for (int i = x0; i < x1; i++) {
+                int pixel = j * width + i;
+                int[] runs = pixelRuns[pixel];
+                int at = pixelStarts[pixel];
+                int end = at + 1 + runs[at];
+                double alphaAccum = 1;
+                double redAccum = 0;
+                double greenAccum = 0;
+                double blueAccum = 0;
+
+                for (at++; at < end && alphaAccum >= threshold; at++) {
+                    int colour = TransferFunctionTable.index((short) (runs[at] >> 16));
+                    double sigma = rgba[colour + TransferFunctionTable.ALPHA];
+                    float red = rgba[colour + TransferFunctionTable.RED];
+                    float green = rgba[colour + TransferFunctionTable.GREEN];
+                    float blue = rgba[colour + TransferFunctionTable.BLUE];
+                    for (int n = runs[at] & MAX_RUN; n > 0 && alphaAccum >= threshold; n--) {
+                        redAccum = Math.min(redAccum + (alphaAccum * red), 1);
+                        greenAccum = Math.min(greenAccum + (alphaAccum * green), 1);
+                        blueAccum = Math.min(blueAccum + (alphaAccum * blue), 1);
+                        alphaAccum = alphaAccum * (1 - sigma);
+                    }
+                }
+                pixels[pixel] = RayCaster.toArgb(redAccum, greenAccum, blueAccum);
+            }
+        }
+    }
+
+    /**
+     * Gets the memory held by the segments.
+     * @return The number of bytes of runs and per pixel references held.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+}
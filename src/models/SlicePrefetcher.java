@@ -0,0 +1,138 @@
+package models;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the slices a user is about to scrub to ahead of time. The direction and speed of scrubbing is
+ * tracked for each view, and the slices that will be reached within the next LOOKAHEAD_SECONDS are drawn
+ * on low priority background threads into the frame cache of the viewer, so that scrubbing steadily only
+ * copies frames already drawn. Slices queued but no longer ahead of the scrub are cancelled.
+ * @author Josh Codd.
+ */
+public class SlicePrefetcher {
+    private static final int MIN_AHEAD = 2;
+    private static final int MAX_AHEAD = 32;
+    private static final double LOOKAHEAD_SECONDS = 0.25;
+    private static final double SMOOTHING = 0.5;
+    private static final long IDLE_SECONDS = 10;
+    private final CTViewer viewer;
+    private final ThreadPoolExecutor executor;
+    private final Scrub[] scrubs = new Scrub[View.values().length];
+    private long prefetched = 0;
+    private long cancelled = 0;
+
+    /**
+     * The scrubbing of a single view.
+     */
+    private static class Scrub {
+        private int slice = -1;
+        private long time;
+        private double velocity = 0;
+        private int direction = 1;
+        private final Map<Integer, Future<?>> pending = new HashMap<>();
+    }
+
+    /**
+     * Creates a prefetcher using half of the available processors. Its threads stop when they have been
+     * idle for a while.
+     * @param viewer The viewer to draw slices with.
+     */
+    public SlicePrefetcher(CTViewer viewer) {
+        this(viewer, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Creates a prefetcher. Its threads stop when they have been idle for a while.
+     * @param viewer The viewer to draw slices with.
+     * @param threads The number of threads to draw slices on.
+     */
+    public SlicePrefetcher(CTViewer viewer, int threads) {
+        this.viewer = viewer;
+        this.executor = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "prefetch");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        for (View view : View.values()) {
+            scrubs[view.ordinal()] = new Scrub();
+        }
+    }
+
+    /**
+     * Records that a view has been scrubbed to a slice, and draws the slices ahead of it in the direction
+     * of scrubbing. The faster the scrubbing, the further ahead slices are drawn.
+     * @param view The view scrubbed.
+     * @param slice The slice scrubbed to.
+     */
+    public synchronized void scrubbed(View view, int slice) {
+        Scrub scrub = scrubs[view.ordinal()];
+        long now = System.nanoTime();
+        if (scrub.slice >= 0 && slice != scrub.slice) {
+            int direction = slice > scrub.slice ? 1 : -1;
+            double velocity = Math.abs(slice - scrub.slice) / (Math.max(now - scrub.time, 1) / 1e9);
+            scrub.velocity = direction == scrub.direction
+                    ? SMOOTHING * velocity + (1 - SMOOTHING) * scrub.velocity : velocity;
+            scrub.direction = direction;
+        }
+        scrub.slice = slice;
+        scrub.time = now;
+
+        int depth = viewer.getSampler(view).getDepth();
+        int ahead = (int) Math.max(MIN_AHEAD, Math.min(MAX_AHEAD, Math.ceil(scrub.velocity * LOOKAHEAD_SECONDS)));
+        int first = slice + scrub.direction;
+        int last = Math.max(0, Math.min(depth - 1, slice + scrub.direction * ahead));
+        int low = first < 0 || first >= depth ? 1 : Math.min(first, last);
+        int high = first < 0 || first >= depth ? 0 : Math.max(first, last);
+
+        scrub.pending.entrySet().removeIf(entry -> {
+            if (entry.getValue().isDone()) {
+                return true;
+            }
+            if (entry.getKey() < low || entry.getKey() > high) {
+                entry.getValue().cancel(false);
+                cancelled++;
+                return true;
+            }
+            return false;
+        });
+        executor.purge();
+
+        for (int next = first; next >= low && next <= high; next += scrub.direction) {
+            int nextSlice = next;
+            if (!scrub.pending.containsKey(nextSlice) && !viewer.isSliceCached(view, nextSlice)) {
+                scrub.pending.put(nextSlice, executor.submit(() -> viewer.cacheSlice(view, nextSlice)));
+                prefetched++;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of slices queued to be drawn ahead of time.
+     * @return The number of slices queued.
+     */
+    public synchronized long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * Gets the number of queued slices cancelled because they were no longer ahead of the scrub.
+     * @return The number of slices cancelled.
+     */
+    public synchronized long getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels every queued slice and stops the background threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,17 @@
+package models;
+
+/**
+ * Renders a rectangular tile of an image.
+ * @author Josh Codd.
+ */
+public interface TileRenderer {
+
+    /**
+     * Renders every pixel within a tile.
+     * @param x0 The first column of the tile.
+     * @param y0 The first row of the tile.
+     * @param x1 The column after the last column of the tile.
+     * @param y1 The row after the last row of the tile.
+     */
+    void renderTile(int x0, int y0, int x1, int y1);
+}
@@ -0,0 +1,115 @@
+package models;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Splits an image into square tiles and renders them on a work-stealing fork-join pool. Each tile is a
+ * single task, large enough to amortise scheduling and small enough to keep its rays' working set in
+ * cache, and idle threads steal whole ranges of tiles from busy ones.
+ * @author Josh Codd.
+ */
+public class TileScheduler {
+    public static final int DEFAULT_TILE_SIZE = 32;
+    private final int tileSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a tile scheduler.
+     * @param tileSize The width and height of a tile in pixels.
+     * @param threads The number of threads to render with, or 0 to share the common fork-join pool.
+     */
+    public TileScheduler(int tileSize, int threads) {
+        this.tileSize = Math.max(1, tileSize);
+        this.pool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Renders every tile of an image, returning once all are done.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param renderer Renders a single tile.
+     * @param isCancelled Checked before each tile to find if the render is no longer needed.
+     */
+    public void render(int width, int height, TileRenderer renderer, BooleanSupplier isCancelled) {
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        pool.invoke(new TileAction(width, height, columns, 0, columns * rows, renderer, isCancelled));
+    }
+
+    /**
+     * Gets the width and height of a tile.
+     * @return The tile size in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Gets the number of threads tiles are rendered with.
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stops the threads of this scheduler, unless it shares the common pool.
+     */
+    public void shutdown() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Renders a range of tiles, splitting the range in half until a single tile remains.
+     */
+    @SuppressWarnings("serial")
+    private class TileAction extends RecursiveAction {
+        private final int width;
+        private final int height;
+        private final int columns;
+        private final int first;
+        private final int last;
+        private final TileRenderer renderer;
+        private final BooleanSupplier isCancelled;
+
+        /**
+         * Creates an action to render a range of tiles, numbered row by row.
+         * @param width The width of the image.
+         * @param height The height of the image.
+         * @param columns The number of tiles in each row.
+         * @param first The first tile to render.
+         * @param last The tile after the last tile to render.
+         * @param renderer Renders a single tile.
+         * @param isCancelled Checked before each tile to find if the render is no longer needed.
+         */
+        TileAction(int width, int height, int columns, int first, int last, TileRenderer renderer,
+                   BooleanSupplier isCancelled) {
+            this.width = width;
+            this.height = height;
+            this.columns = columns;
+            this.first = first;
+            this.last = last;
+            this.renderer = renderer;
+            this.isCancelled = isCancelled;
+        }
+
+        /**
+         * Renders the range of tiles.
+         */
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new TileAction(width, height, columns, first, middle, renderer, isCancelled),
+                        new TileAction(width, height, columns, middle, last, renderer, isCancelled));
+            } else if (last > first && !isCancelled.getAsBoolean()) {
+                int x0 = (first % columns) * tileSize;
+                int y0 = (first / columns) * tileSize;
+                renderer.renderTile(x0, y0, Math.min(x0 + tileSize, width), Math.min(y0 + tileSize, height));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package models;
+
+/**
+ * A precompiled transfer function. Holds the premultiplied RGBA colour of every possible 16-bit voxel
+ * value so that a render can look a colour up rather than calculate it per sample.
+ * @author Josh Codd.
+ */
+public class TransferFunctionTable {
+    public static final int ENTRIES = 1 << 16;
+    public static final int RED = 0;
+    public static final int GREEN = 1;
+    public static final int BLUE = 2;
+    public static final int ALPHA = 3;
+    public static final int MAX_STEP = 64;
+    private final String name;
+    private final double opacity;
+    private final float[] rgba;
+    private final int[] opaqueCount;
+    private final TransferFunctionTable[] stepTables = new TransferFunctionTable[MAX_STEP + 1];
+
+    /**
+     * Creates a transfer function table.
+     * @param name The name of the transfer function the table was built from.
+     * @param opacity The skin opacity the table was built with.
+     * @param rgba The premultiplied RGBA values, four per voxel value, ordered from Short.MIN_VALUE.
+     */
+    public TransferFunctionTable(String name, double opacity, float[] rgba) {
+        this.name = name;
+        this.opacity = opacity;
+        this.rgba = rgba;
+        this.opaqueCount = new int[ENTRIES + 1];
+        for (int i = 0; i < ENTRIES; i++) {
+            opaqueCount[i + 1] = opaqueCount[i] + (rgba[(i << 2) + ALPHA] > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * Gets the position of the first (red) entry for a voxel within the table.
+     * @param voxel The voxel to find.
+     * @return The index of the red entry, followed by green, blue and alpha.
+     */
+    public static int index(short voxel) {
+        return (voxel - Short.MIN_VALUE) << 2;
+    }
+
+    /**
+     * Checks if this table was built from the specified transfer function settings.
+     * @param name The name of the transfer function.
+     * @param opacity The opacity of the skin.
+     * @return If the table can be used for these settings.
+     */
+    public boolean matches(String name, double opacity) {
+        return this.name.equals(name) && this.opacity == opacity;
+    }
+
+    /**
+     * Checks if every voxel value within a range is fully transparent.
+     * @param min The lowest value of the range.
+     * @param max The highest value of the range.
+     * @return If no value in the range contributes to an image.
+     */
+    public boolean isTransparent(short min, short max) {
+        return min > max || opaqueCount[max - Short.MIN_VALUE + 1] == opaqueCount[min - Short.MIN_VALUE];
+    }
+
+    /**
+     * Gets a version of this table for rays that sample every step-th voxel. Each sample then stands for
+     * step voxels, so its opacity is corrected to 1 - (1 - opacity)^step.
+     * @param step The distance between samples, from 1 to MAX_STEP.
+     * @return The corrected table, or this table for a step of 1.
+     */
+    public TransferFunctionTable forStep(int step) {
+        if (step <= 1) {
+            return this;
+        }
+        TransferFunctionTable table = stepTables[step];
+        if (table == null) {
+            float[] corrected = new float[rgba.length];
+            for (int i = 0; i < rgba.length; i += 4) {
+                float sigma = rgba[i + ALPHA];
+                if (sigma > 0) {
+                    float correctedSigma = (float) (1 - Math.pow(1 - sigma, step));
+                    corrected[i + RED] = rgba[i + RED] / sigma * correctedSigma;
+                    corrected[i + GREEN] = rgba[i + GREEN] / sigma * correctedSigma;
+                    corrected[i + BLUE] = rgba[i + BLUE] / sigma * correctedSigma;
+                    corrected[i + ALPHA] = correctedSigma;
+                }
+            }
+            table = new TransferFunctionTable(name, opacity, corrected);
+            stepTables[step] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Gets the premultiplied RGBA values of the table.
+     * @return The RGBA values, four per voxel value.
+     */
+    public float[] getRGBA() {
+        return rgba;
+    }
+}
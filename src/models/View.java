@@ -0,0 +1,55 @@
+package models;
+
+/**
+ * The directions a volume can be viewed from. Each view maps the width and height of its images and
+ * the depth of its rays onto the x (0), y (1) and z (2) axes of the volume.
+ * @author Josh Codd.
+ */
+public enum View {
+    TOP(0, 1, 2),
+    FRONT(0, 2, 1),
+    SIDE(1, 2, 0);
+
+    public static final int X_AXIS = 0;
+    public static final int Y_AXIS = 1;
+    public static final int Z_AXIS = 2;
+    private final int widthAxis;
+    private final int heightAxis;
+    private final int depthAxis;
+
+    /**
+     * Creates a view.
+     * @param widthAxis The volume axis along the width of the image.
+     * @param heightAxis The volume axis along the height of the image.
+     * @param depthAxis The volume axis along each ray.
+     */
+    View(int widthAxis, int heightAxis, int depthAxis) {
+        this.widthAxis = widthAxis;
+        this.heightAxis = heightAxis;
+        this.depthAxis = depthAxis;
+    }
+
+    /**
+     * Gets the volume axis along the width of images of this view.
+     * @return The width axis.
+     */
+    public int getWidthAxis() {
+        return widthAxis;
+    }
+
+    /**
+     * Gets the volume axis along the height of images of this view.
+     * @return The height axis.
+     */
+    public int getHeightAxis() {
+        return heightAxis;
+    }
+
+    /**
+     * Gets the volume axis along rays of this view.
+     * @return The depth axis.
+     */
+    public int getDepthAxis() {
+        return depthAxis;
+    }
+}
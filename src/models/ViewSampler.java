@@ -0,0 +1,124 @@
+package models;
+
+/**
+ * Samples a volume from a specific view/direction. The view is resolved once into the volume layout's
+ * offset tables, so the position in storage of any sample is the sum of three table lookups, whichever
+ * layout the volume is stored in.
+ * Image position (i, j) and ray depth k are mapped to volume axes as follows:
+ * top (x, y, z), front (x, z, y) and side (y, z, x).
+ * @author Josh Codd.
+ */
+public class ViewSampler {
+    private final Volume volume;
+    private final View view;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final long[] widthOffsets;
+    private final long[] heightOffsets;
+    private final long[] depthOffsets;
+
+    /**
+     * Creates a sampler for a volume viewed from the specified direction.
+     * @param volume The volume to sample.
+     * @param view The direction to view the volume from.
+     */
+    public ViewSampler(Volume volume, View view) {
+        VoxelLayout layout = volume.getLayout();
+        this.volume = volume;
+        this.view = view;
+        this.widthOffsets = layout.getOffsets(view.getWidthAxis());
+        this.heightOffsets = layout.getOffsets(view.getHeightAxis());
+        this.depthOffsets = layout.getOffsets(view.getDepthAxis());
+        this.width = widthOffsets.length;
+        this.height = heightOffsets.length;
+        this.depth = depthOffsets.length;
+    }
+
+    /**
+     * Gets the position within the volume's storage of a voxel.
+     * @param x The x position within the image.
+     * @param y The y position within the image.
+     * @param z The depth along the ray.
+     * @return The index of the voxel.
+     */
+    public long offset(int x, int y, int z) {
+        return widthOffsets[x] + heightOffsets[y] + depthOffsets[z];
+    }
+
+    /**
+     * Gets the voxel at the specified position in this view.
+     * @param x The x position within the image.
+     * @param y The y position within the image.
+     * @param z The depth along the ray.
+     * @return The voxel at that position.
+     */
+    public short get(int x, int y, int z) {
+        return volume.getVoxel(offset(x, y, z));
+    }
+
+    /**
+     * Gets the voxel at an index previously calculated using the offsets of this sampler.
+     * @param index The index of the voxel.
+     * @return The voxel at that index.
+     */
+    public short get(long index) {
+        return volume.getVoxel(index);
+    }
+
+    /**
+     * Gets the view this sampler samples from.
+     * @return The view.
+     */
+    public View getView() {
+        return view;
+    }
+
+    /**
+     * Gets the width of images of this view.
+     * @return The image width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of images of this view.
+     * @return The image height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the maximum depth of a ray in this view.
+     * @return The ray depth.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the offset in storage of every column of the image. These must not be modified.
+     * @return The width offsets.
+     */
+    public long[] getWidthOffsets() {
+        return widthOffsets;
+    }
+
+    /**
+     * Gets the offset in storage of every row of the image. These must not be modified.
+     * @return The height offsets.
+     */
+    public long[] getHeightOffsets() {
+        return heightOffsets;
+    }
+
+    /**
+     * Gets the offset in storage of every depth along a ray. These must not be modified.
+     * @return The depth offsets.
+     */
+    public long[] getDepthOffsets() {
+        return depthOffsets;
+    }
+}
@@ -0,0 +1,112 @@
+package models;
+import java.util.Arrays;
+
+/**
+ * Re-samples and therefore fixes the female visible human data set.
+ * Due to the cadaver being moved around, there are some issues with the dataset. This fixes those issues
+ * by shrinking the affected slices with nearest neighbour sampling and centring them within the slice again,
+ * surrounded by air. The source row and column of every voxel are precomputed for each shrink factor, so a
+ * slice is re-sampled straight from its decoded voxels into its destination, one slice per thread, as it is
+ * loaded.
+ * @author Josh Codd.
+ */
+public class VisibleHumanResampler {
+    private static final short AIR = -1024;
+    private static final double[] SCALES = {1.9, 1.3, 1.1};
+    private final int width;
+    private final int height;
+    private final int[] scaleOf;
+    private final int[][] sourceRows = new int[SCALES.length][];
+    private final int[][] sourceColumns = new int[SCALES.length][];
+
+    /**
+     * Creates a re-sampler for a volume of specified size.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     */
+    public VisibleHumanResampler(int x, int y, int z) {
+        this.width = x;
+        this.height = y;
+        this.scaleOf = new int[z];
+        for (int slice = 0; slice < z; slice++) {
+            scaleOf[slice] = getScale(slice, z);
+        }
+        for (int scale = 0; scale < SCALES.length; scale++) {
+            buildTables(scale);
+        }
+    }
+
+    /**
+     * Checks if a slice has to be re-sampled.
+     * @param slice The slice to check.
+     * @return If the slice is re-sampled.
+     */
+    public boolean isResampled(int slice) {
+        return scaleOf[slice] >= 0;
+    }
+
+    /**
+     * Re-samples a single slice.
+     * @param slice The slice being re-sampled, which must need re-sampling.
+     * @param src The voxels of the slice as loaded, row by row.
+     * @param dst The array to write the re-sampled slice to, row by row. Must not be src.
+     */
+    public void resample(int slice, short[] src, short[] dst) {
+        int[] rows = sourceRows[scaleOf[slice]];
+        int[] columns = sourceColumns[scaleOf[slice]];
+        for (int j = 0; j < height; j++) {
+            int row = rows[j] * width;
+            int position = j * width;
+            for (int i = 0; i < width; i++) {
+                dst[position + i] = columns[i] < 0 ? AIR : src[row + columns[i]];
+            }
+        }
+    }
+
+    /**
+     * Gets how much a slice has to be shrunk by when re-sampling.
+     * @param slice The slice to re-sample.
+     * @param z The length of the z axis.
+     * @return The position of the factor to shrink the slice by in SCALES, or -1 if the slice does not
+     * need re-sampling.
+     */
+    private static int getScale(int slice, int z) {
+        if (slice < 209) {
+            return 0;
+        } else if (slice < 227) {
+            return 1;
+        } else if (slice < 249) {
+            return 2;
+        } else if (z > 1117 && ((slice >= 1106 && slice < 1110) || slice >= 1117)) {
+            return 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Precomputes where every voxel of a slice shrunk by a factor is read from. The slice is shrunk to the
+     * nearest neighbour of each voxel, then placed with its first row and column just after the same
+     * margin on both axes. Rows of the margins repeat the nearest shrunk row, while columns of the margins
+     * are air, marked as -1.
+     * @param scale The position of the factor in SCALES.
+     */
+    private void buildTables(int scale) {
+        int resizedWidth = (int) (width / SCALES[scale]);
+        int resizedHeight = (int) (height / SCALES[scale]);
+        int margin = (width - resizedWidth) / 2;
+
+        int[] rows = new int[height];
+        for (int j = 0; j < height; j++) {
+            int resizedRow = Math.max(0, Math.min(j - margin - 1, resizedWidth - 1));
+            rows[j] = (int) (resizedRow * (float) width / resizedWidth);
+        }
+        int[] columns = new int[width];
+        Arrays.fill(columns, -1);
+        for (int i = margin + 1; i < Math.min(width, margin + resizedWidth); i++) {
+            columns[i] = (int) ((i - margin - 1) * (float) height / resizedHeight);
+        }
+        sourceRows[scale] = rows;
+        sourceColumns[scale] = columns;
+    }
+}
@@ -1,14 +1,32 @@
 package models;
 import java.lang.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Represents a volume. That is, a 3D data set.
  * @author Josh Codd.
  */
 public class Volume {
-    private short[][][] volume;
+    private VoxelBuffer volume;
+    private VoxelStore voxels;
+    private VoxelLayout layout;
+    private BrickCache cache;
+    private File pageFile;
+    private CompressedBricks compressed;
     private short min, max;
+    private long[] histogram;
+    private BrickGrid bricks;
+    private GradientVolume gradients;
+    private volatile boolean isLoaded = false;
     private final int CT_x_axis;
     private final int CT_y_axis;
     private final int CT_z_axis;
@@ -23,6 +41,7 @@ public class Volume {
         this.CT_x_axis = x;
         this.CT_y_axis = y;
         this.CT_z_axis = z;
+        this.layout = VoxelLayout.linear(x, y, z);
     }
 
     /**
@@ -33,36 +52,411 @@ public class Volume {
      * @throws IOException If file ends prematurely/wrong size volume.
      */
     public void ReadData(String filename, boolean isCorrectEndian, boolean isVH) throws IOException {
+        ReadData(filename, isCorrectEndian, isVH, false);
+    }
+
+    /**
+     * Populates the volume with data from file.
+     * @param filename The name of the file to read from.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param isVH If the volume is the VH project and therefore needs re-sampling.
+     * @param isMapped If the file should be memory-mapped rather than copied into memory. A scan that needs
+     * re-sampling is only mapped if the file is writable, and is copied otherwise.
+     * @throws IOException If file ends prematurely/wrong size volume.
+     */
+    public void ReadData(String filename, boolean isCorrectEndian, boolean isVH, boolean isMapped)
+            throws IOException {
+        ReadData(filename, isCorrectEndian, isVH, isMapped, false);
+    }
+
+    /**
+     * Populates the volume with data from file.
+     * @param filename The name of the file to read from.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param isVH If the volume is the VH project and therefore needs re-sampling.
+     * @param isMapped If the file should be memory-mapped rather than copied into memory. A scan that needs
+     * re-sampling is only mapped if the file is writable, and is copied otherwise.
+     * @param isBricked If the voxels should be stored in Morton ordered bricks rather than slice by slice.
+     * A bricked volume is always copied into memory, even if the file was mapped.
+     * @throws IOException If file ends prematurely/wrong size volume.
+     */
+    public void ReadData(String filename, boolean isCorrectEndian, boolean isVH, boolean isMapped,
+                         boolean isBricked) throws IOException {
+        ReadData(filename, isCorrectEndian, isVH, isMapped, isBricked, 0, null);
+    }
+
+    /**
+     * Populates the volume with data from file, reporting progress as it loads.
+     * When the volume is copied into memory slice by slice, the first slice to be viewed is loaded before
+     * the others and previewed, so the volume can be viewed while the rest of it streams in.
+     * @param filename The name of the file to read from.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param isVH If the volume is the VH project and therefore needs re-sampling.
+     * @param isMapped If the file should be memory-mapped rather than copied into memory. A scan that needs
+     * re-sampling is only mapped if the file is writable, and is copied otherwise.
+     * @param isBricked If the voxels should be stored in Morton ordered bricks rather than slice by slice.
+     * A bricked volume is always copied into memory, even if the file was mapped.
+     * @param firstSlice The slice of the top view to load and preview first, limited to the slices of the
+     * volume, or -1 to not preview the volume.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @throws IOException If file ends prematurely/wrong size volume.
+     * @throws java.util.concurrent.CancellationException If the load was cancelled.
+     */
+    public void ReadData(String filename, boolean isCorrectEndian, boolean isVH, boolean isMapped,
+                         boolean isBricked, int firstSlice, LoadProgress progress) throws IOException {
         File file = new File(filename);
-        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-        min=Short.MAX_VALUE; max=Short.MIN_VALUE;
-        short read;
-        int b1, b2;
-        volume = new short[CT_z_axis][CT_y_axis][CT_x_axis];
+        isLoaded = false;
+        layout = VoxelLayout.linear(CT_x_axis, CT_y_axis, CT_z_axis);
+        compressed = null;
+        gradients = null;
+        releaseCache();
+        //Re-sample if user selected file is visible human project.
+        VisibleHumanResampler resampler = isVH ? new VisibleHumanResampler(CT_x_axis, CT_y_axis, CT_z_axis) : null;
+        // Re-sampled slices are kept in a private mapping, which can only be made of a writable file.
+        if (isMapped && (resampler == null || Files.isWritable(file.toPath()))) {
+            mapData(file, isCorrectEndian, resampler, progress);
+        } else {
+            readData(file, isCorrectEndian, resampler, isBricked ? -1 : firstSlice, progress);
+        }
+        if (isBricked) {
+            rearrange(VoxelLayout.bricked(CT_x_axis, CT_y_axis, CT_z_axis));
+        }
+        voxels = volume;
+        bricks = new BrickGrid(this);
+        isLoaded = true;
+    }
 
-        for (int k = 0; k < CT_z_axis; k++) {
-            for (int j = 0; j < CT_y_axis; j++) {
-                for (int i = 0; i < CT_x_axis; i++) {
-                    b1 = ((int) in.readByte()) & 0xff;
-                    b2 = ((int) in.readByte()) & 0xff;
-
-                    //swap bytes
-                    if (!isCorrectEndian) {
-                        read = (short) ((b2 << 8) | b1);
-                    } else {
-                        read = (short) (b1 << 8 | b2);
+    /**
+     * Populates the volume with data from file without holding it all in memory. The file is split into
+     * pages of bricks on disk, which are then read into a cache of limited size as they are needed.
+     * This allows volumes larger than the available memory to be viewed, at the cost of speed.
+     * @param filename The name of the file to read from.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param isVH If the volume is the VH project and therefore needs re-sampling.
+     * @param memoryBudget The number of bytes of voxels to hold in memory at once.
+     * @throws IOException If file ends prematurely/wrong size volume, or the pages could not be written.
+     */
+    public void ReadDataOutOfCore(String filename, boolean isCorrectEndian, boolean isVH, long memoryBudget)
+            throws IOException {
+        ReadDataOutOfCore(filename, isCorrectEndian, isVH, memoryBudget, null);
+    }
+
+    /**
+     * Populates the volume with data from file without holding it all in memory, reporting progress as
+     * the pages are written.
+     * @param filename The name of the file to read from.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param isVH If the volume is the VH project and therefore needs re-sampling.
+     * @param memoryBudget The number of bytes of voxels to hold in memory at once.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @throws IOException If file ends prematurely/wrong size volume, or the pages could not be written.
+     * @throws java.util.concurrent.CancellationException If the load was cancelled.
+     */
+    public void ReadDataOutOfCore(String filename, boolean isCorrectEndian, boolean isVH, long memoryBudget,
+                                  LoadProgress progress) throws IOException {
+        File file = new File(filename);
+        isLoaded = false;
+        ByteOrder order = isCorrectEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        VoxelLayout paged = VoxelLayout.paged(CT_x_axis, CT_y_axis, CT_z_axis);
+        compressed = null;
+        releaseCache();
+        pageFile = File.createTempFile("volume", ".pages");
+        pageFile.deleteOnExit();
+
+        FileChannel pages = FileChannel.open(pageFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < (long) CT_x_axis * CT_y_axis * CT_z_axis * 2) {
+                throw new EOFException("File is smaller than the specified volume.");
+            }
+            setStatistics(writePages(channel, order, pages, paged, isVH, progress));
+        } catch (IOException | RuntimeException e) {
+            pages.close();
+            deletePageFile();
+            throw e;
+        }
+        cache = new BrickCache(pages, (int) (paged.size() >> VoxelLayout.PAGE_VOXELS_SHIFT), memoryBudget);
+        volume = null;
+        voxels = cache;
+        layout = paged;
+        gradients = null;
+        bricks = new BrickGrid(this);
+        isLoaded = true;
+    }
+
+    /**
+     * Populates the volume with data loaded from a volume file, without scanning or re-sampling it.
+     * @param voxels The voxels of the volume.
+     * @param layout The layout the voxels are stored in.
+     * @param min The minimum value in the volume.
+     * @param max The maximum value in the volume.
+     * @param histogram The number of voxels of every 16-bit value, ordered from Short.MIN_VALUE.
+     * @param bricks The brick grid of the volume, or null to build it.
+     * @param gradients The precomputed normals of the volume, or null to build them when needed.
+     */
+    void setContents(VoxelBuffer voxels, VoxelLayout layout, short min, short max, long[] histogram,
+                     BrickGrid bricks, GradientVolume gradients) {
+        releaseCache();
+        this.compressed = null;
+        this.volume = voxels;
+        this.voxels = voxels;
+        this.layout = layout;
+        this.min = min;
+        this.max = max;
+        this.histogram = histogram;
+        this.gradients = gradients;
+        this.bricks = bricks == null ? new BrickGrid(this) : bricks;
+        this.isLoaded = true;
+    }
+
+    /**
+     * Splits a raw file into pages of bricks, a slab of pages at a time, re-sampling slices if needed and
+     * gathering the statistics of the volume in the same pass. The slices of a slab are decoded in parallel.
+     * @param channel The raw file to read from.
+     * @param order The byte order of the raw file.
+     * @param pages The file to write pages to, in the native byte order.
+     * @param paged The paged layout of the volume.
+     * @param isVH If the volume is the VH project and therefore needs re-sampling.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @return The statistics of the volume, as read from file.
+     * @throws IOException If the raw file could not be read or the pages could not be written.
+     */
+    private VolumeStatistics writePages(FileChannel channel, ByteOrder order, FileChannel pages,
+                                        VoxelLayout paged, boolean isVH, LoadProgress progress)
+            throws IOException {
+        long[] xOffsets = paged.getOffsets(View.X_AXIS);
+        long[] yOffsets = paged.getOffsets(View.Y_AXIS);
+        long[] zOffsets = paged.getOffsets(View.Z_AXIS);
+        int slabPages = ((CT_x_axis + VoxelLayout.PAGE_SIZE - 1) >> VoxelLayout.PAGE_SHIFT)
+                * ((CT_y_axis + VoxelLayout.PAGE_SIZE - 1) >> VoxelLayout.PAGE_SHIFT);
+        short[] slab = new short[slabPages * BrickCache.PAGE_VOXELS];
+        VisibleHumanResampler resampler = isVH ? new VisibleHumanResampler(CT_x_axis, CT_y_axis, CT_z_axis) : null;
+        ByteBuffer bytes = ByteBuffer.allocateDirect(slab.length * 2).order(ByteOrder.nativeOrder());
+        // Each task keeps its statistics across every slab, so they are only merged once at the end.
+        int tasks = Math.min(VoxelLayout.PAGE_SIZE, ForkJoinPool.getCommonPoolParallelism());
+        VolumeStatistics[] statistics = new VolumeStatistics[tasks];
+        Arrays.setAll(statistics, task -> new VolumeStatistics());
+
+        try {
+            for (int first = 0; first < CT_z_axis; first += VoxelLayout.PAGE_SIZE) {
+                if (progress != null && progress.isCancelled()) {
+                    throw new CancellationException("Loading was cancelled.");
+                }
+                long slabStart = zOffsets[first];
+                int slabFirst = first, slabLast = Math.min(CT_z_axis, first + VoxelLayout.PAGE_SIZE);
+                Arrays.fill(slab, (short) 0);
+                IntStream.range(0, tasks).parallel().forEach(task -> {
+                    for (int k = slabFirst + task; k < slabLast; k += tasks) {
+                        short[] slice = readSlice(channel, order, k);
+                        for (short voxel : slice) {
+                            statistics[task].add(voxel);
+                        }
+                        if (resampler != null && resampler.isResampled(k)) {
+                            short[] resampled = new short[slice.length];
+                            resampler.resample(k, slice, resampled);
+                            slice = resampled;
+                        }
+                        for (int j = 0; j < CT_y_axis; j++) {
+                            long rowStart = yOffsets[j] + zOffsets[k] - slabStart;
+                            for (int i = 0; i < CT_x_axis; i++) {
+                                slab[(int) (rowStart + xOffsets[i])] = slice[j * CT_x_axis + i];
+                            }
+                        }
                     }
+                });
 
-                    if (read < min) min = read;
-                    if (read > max) max = read;
-                    volume[k][j][i] = read;
+                bytes.clear();
+                bytes.asShortBuffer().put(slab);
+                long position = slabStart * 2;
+                while (bytes.hasRemaining()) {
+                    position += pages.write(bytes, position);
+                }
+                if (progress != null) {
+                    int slices = Math.min(CT_z_axis - first, VoxelLayout.PAGE_SIZE);
+                    progress.slicesLoaded(slices, (long) slices * CT_x_axis * CT_y_axis * 2);
                 }
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int task = 1; task < tasks; task++) {
+            statistics[0].merge(statistics[task]);
         }
+        return statistics[0];
+    }
 
-        if (isVH) { //Re-sample if user selected file is visible human project.
-            resampleVisibleHuman();
+    /**
+     * Reads a single slice from a raw file.
+     * @param channel The raw file to read from.
+     * @param order The byte order of the raw file.
+     * @param slice The slice to read.
+     * @return The voxels of the slice, row by row.
+     */
+    private short[] readSlice(FileChannel channel, ByteOrder order, int slice) {
+        ByteBuffer bytes = ByteBuffer.allocate(CT_x_axis * CT_y_axis * 2).order(order);
+        long position = (long) slice * bytes.capacity();
+        try {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0) {
+                    throw new EOFException("File is smaller than the specified volume.");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        bytes.flip();
+        short[] voxels = new short[CT_x_axis * CT_y_axis];
+        bytes.asShortBuffer().get(voxels);
+        return voxels;
+    }
+
+    /**
+     * Stops paging the voxels of an out-of-core volume, once it is no longer viewed, and deletes its file
+     * of pages. An out-of-core volume cannot be read afterwards. A volume held in memory is not affected.
+     */
+    public void shutdown() {
+        releaseCache();
+    }
+
+    /**
+     * Stops paging the voxels of an earlier out-of-core load, if there was one.
+     */
+    private void releaseCache() {
+        if (cache != null) {
+            cache.shutdown();
+            cache = null;
+        }
+        deletePageFile();
+    }
+
+    /**
+     * Deletes the file of pages of an out-of-core load, if there is one.
+     */
+    private void deletePageFile() {
+        if (pageFile != null) {
+            // A file that cannot be deleted now is still deleted when the application exits.
+            pageFile.delete();
+            pageFile = null;
+        }
+    }
+
+    /**
+     * Copies the data of a file into memory. Slices are read in large blocks and decoded in parallel,
+     * gathering the statistics of the volume and re-sampling slices in the same pass.
+     * If a first slice and a receiver of progress are given, the first slice is loaded on its own and
+     * previewed before the rest, and the volume is readable from then on.
+     * @param file The file to read from.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param resampler The re-sampler to apply to slices, or null if the volume is not re-sampled.
+     * @param firstSlice The slice to load and preview first, or -1 to not preview the volume.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @throws IOException If file ends prematurely/wrong size volume.
+     */
+    private void readData(File file, boolean isCorrectEndian, VisibleHumanResampler resampler, int firstSlice,
+                          LoadProgress progress) throws IOException {
+        ByteOrder order = isCorrectEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        int sliceLength = CT_x_axis * CT_y_axis;
+        volume = VoxelBuffer.allocate((long) sliceLength * CT_z_axis);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (progress == null || firstSlice < 0) {
+                setStatistics(VolumeLoadTask.load(channel, order, volume, resampler, progress, sliceLength, 0,
+                        CT_z_axis));
+                return;
+            }
+            int first = Math.min(Math.max(firstSlice, 0), CT_z_axis - 1);
+            VolumeStatistics preview = VolumeLoadTask.load(channel, order, volume, resampler, progress,
+                    sliceLength, first, first + 1);
+            setStatistics(preview);
+            voxels = volume;
+            progress.previewLoaded(this);
+            setStatistics(VolumeLoadTask.load(channel, order, volume, resampler, progress, sliceLength, 0, first)
+                    .merge(VolumeLoadTask.load(channel, order, volume, resampler, progress, sliceLength,
+                            first + 1, CT_z_axis))
+                    .merge(preview));
+        }
+    }
+
+    /**
+     * Memory-maps the data of a file, so that voxels are read straight from the file rather than copied.
+     * The statistics of the volume are still gathered over the whole mapping, so every page is read once
+     * while loading; only a volume file, which stores its statistics, avoids this.
+     * @param file The file to map.
+     * @param isCorrectEndian If the file is in the correct endian or not.
+     * @param resampler The re-sampler to apply to slices, or null if the volume is not re-sampled.
+     * Re-sampled slices are altered in memory only, never in the file, but the file must be writable.
+     * @param progress The receiver of the progress of gathering statistics, or null if it is not reported.
+     * @throws IOException If file ends prematurely/wrong size volume.
+     */
+    private void mapData(File file, boolean isCorrectEndian, VisibleHumanResampler resampler,
+                         LoadProgress progress) throws IOException {
+        long length = (long) CT_x_axis * CT_y_axis * CT_z_axis;
+        ByteOrder order = isCorrectEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+        // A private mapping is never written back, but can only be made of a file opened for writing.
+        StandardOpenOption[] options = resampler == null ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file.toPath(), options)) {
+            if (channel.size() < length * 2) {
+                throw new EOFException("File is smaller than the specified volume.");
+            }
+            volume = VoxelBuffer.map(channel, order, length, resampler != null);
+        }
+        setStatistics(VolumeLoadTask.load(null, order, volume, resampler, progress, CT_x_axis * CT_y_axis, 0,
+                CT_z_axis));
+    }
+
+    /**
+     * Sets the minimum, maximum and histogram of the volume.
+     * @param statistics The statistics gathered while loading.
+     */
+    private void setStatistics(VolumeStatistics statistics) {
+        min = statistics.getMin();
+        max = statistics.getMax();
+        histogram = statistics.getHistogram();
+    }
+
+    /**
+     * Copies the voxels of a linear volume into the specified layout.
+     * @param layout The layout to store the voxels in.
+     */
+    private void rearrange(VoxelLayout layout) {
+        VoxelBuffer rearranged = VoxelBuffer.allocate(layout.size());
+        long[] xOffsets = layout.getOffsets(View.X_AXIS);
+        IntStream.range(0, CT_z_axis).parallel().forEach(k -> {
+            short[] row = new short[CT_x_axis];
+            for (int j = 0; j < CT_y_axis; j++) {
+                volume.get(this.layout.address(0, j, k), row, 0, CT_x_axis);
+                long rowAddress = layout.address(0, j, k);
+                for (int i = 0; i < CT_x_axis; i += BrickGrid.BRICK_SIZE) {
+                    int run = Math.min(BrickGrid.BRICK_SIZE, CT_x_axis - i);
+                    rearranged.put(rowAddress + xOffsets[i], row, i, run);
+                }
+            }
+        });
+        volume = rearranged;
+        this.layout = layout;
+    }
+
+    /**
+     * Compresses the voxels of the volume brick by brick, so that they take less memory and less memory
+     * has to be read to view them. The voxels are stored in the bricked layout afterwards, so this must be
+     * called before the volume is viewed. An out-of-core volume is read into memory as it is compressed.
+     */
+    public void compress() {
+        compressed = new CompressedBricks(this, VoxelLayout.bricked(CT_x_axis, CT_y_axis, CT_z_axis));
+        layout = VoxelLayout.bricked(CT_x_axis, CT_y_axis, CT_z_axis);
+        voxels = compressed;
+        volume = null;
+        gradients = null;
+        releaseCache();
+    }
+
+    /**
+     * Gets the compressed voxels of the volume.
+     * @return The compressed voxels, or null if the volume has not been compressed.
+     */
+    public CompressedBricks getCompressedBricks() {
+        return compressed;
     }
 
     /**
@@ -73,7 +467,70 @@ public class Volume {
      * @return The voxel at that location.
      */
     public short getVoxel(int x, int y, int z) {
-        return volume[x][y][z];
+        return getVoxel(layout.address(z, y, x));
+    }
+
+    /**
+     * Get the voxel at the specified index into the volume's storage, as given by the volume's layout.
+     * @param index The index of the voxel.
+     * @return The voxel at that index.
+     */
+    public short getVoxel(long index) {
+        return voxels.get(index);
+    }
+
+    /**
+     * Hints that the voxel at the specified index will be needed soon. An out-of-core volume starts paging
+     * it in on a background thread, while a volume in memory ignores the hint.
+     * @param index The index of the voxel.
+     */
+    public void prefetch(long index) {
+        if (cache != null) {
+            cache.prefetch(index);
+        }
+    }
+
+    /**
+     * Copies a row of voxels along the x axis out of the volume's storage. Rows are contiguous in a linear
+     * volume, and split into runs of BrickGrid.BRICK_SIZE voxels in any other volume.
+     * @param y The y location of the row.
+     * @param z The z location of the row.
+     * @param dst The array to copy into, at least as long as the x axis.
+     */
+    public void getRow(int y, int z, short[] dst) {
+        long rowAddress = layout.address(0, y, z);
+        if (!layout.isBricked()) {
+            voxels.get(rowAddress, dst, 0, CT_x_axis);
+            return;
+        }
+        long[] xOffsets = layout.getOffsets(View.X_AXIS);
+        for (int i = 0; i < CT_x_axis; i += BrickGrid.BRICK_SIZE) {
+            voxels.get(rowAddress + xOffsets[i], dst, i, Math.min(BrickGrid.BRICK_SIZE, CT_x_axis - i));
+        }
+    }
+
+    /**
+     * Gets the layout the voxels of the volume are stored in.
+     * @return The layout.
+     */
+    public VoxelLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Checks if the volume is paged in from disk rather than held in memory.
+     * @return If the volume is out-of-core.
+     */
+    public boolean isOutOfCore() {
+        return cache != null;
+    }
+
+    /**
+     * Gets the cache that pages the voxels of an out-of-core volume in from disk.
+     * @return The cache, or null if the volume is held in memory.
+     */
+    public BrickCache getBrickCache() {
+        return cache;
     }
 
     /**
@@ -93,131 +550,70 @@ public class Volume {
     }
 
     /**
-     * Gets the length of the volumes X axis.
-     * @return The volumes X axis length.
+     * Gets the number of voxels of every 16-bit value in the volume, as loaded from file.
+     * @return The histogram, ordered from Short.MIN_VALUE.
      */
-    public int getCT_x_axis() {
-        return CT_x_axis;
+    public long[] getHistogram() {
+        return histogram;
     }
 
     /**
-     * Gets the length of the volumes Y axis.
-     * @return The volumes Y axis length.
+     * Gets the grid of brick minimums and maximums built when the volume was loaded.
+     * @return The brick grid.
      */
-    public int getCT_y_axis() {
-        return CT_y_axis;
+    public BrickGrid getBrickGrid() {
+        return bricks;
     }
 
     /**
-     * Gets the length of the volumes Z axis.
-     * @return The volumes Z axis length.
+     * Gets the precomputed surface normals of the volume, building them the first time they are needed.
+     * @return The gradient volume.
      */
-    public int getCT_z_axis() {
-        return CT_z_axis;
+    public synchronized GradientVolume getGradientVolume() {
+        if (gradients == null) {
+            gradients = new GradientVolume(this);
+        }
+        return gradients;
     }
 
     /**
-     * Re-samples and therefore fixes the female visible human data set.
-     * Due to the cadaver being moved around, there are some issues with the dataset. This
-     * Fixes those issues by re-sampling.
+     * Checks if every slice of the volume has been loaded. While a volume loads slice by slice it can
+     * already be viewed, but only its slices can be drawn until then.
+     * @return If the volume has finished loading.
      */
-    private void resampleVisibleHuman(){
-        for (int j = 0; j < 209; j++) {
-            short[][] temp = resizeMatrix(volume[j], CT_x_axis, CT_y_axis, (int)(CT_x_axis /1.9),
-                    (int)(CT_y_axis/1.9));
-            volume[j] = centreContent(temp, CT_x_axis, CT_y_axis);
-        }
-
-        for (int j = 209; j < 227; j++) {
-            short[][] temp = resizeMatrix(volume[j], CT_x_axis, CT_y_axis, (int)(CT_x_axis /1.3),
-                    (int)(CT_y_axis/1.3));
-            volume[j] = centreContent(temp, CT_x_axis, CT_y_axis);
-        }
-
-        for (int j = 227; j < 249; j++) {
-            short[][] temp = resizeMatrix(volume[j], CT_x_axis, CT_y_axis, (int)(CT_x_axis /1.1),
-                    (int)(CT_y_axis/1.1));
-            volume[j] = centreContent(temp, CT_x_axis, CT_y_axis);
-        }
+    public boolean isLoaded() {
+        return isLoaded;
+    }
 
-        if (CT_z_axis > 1117) {
-            for (int j = 1106; j < 1110; j++) {
-                short[][] temp = resizeMatrix(volume[j], CT_x_axis, CT_y_axis, (int) (CT_x_axis / 1.3),
-                        (int) (CT_y_axis / 1.3));
-                volume[j] = centreContent(temp, CT_x_axis, CT_y_axis);
-            }
+    /**
+     * Checks if the normals of the volume have been precomputed, without building them.
+     * @return If the gradient volume exists.
+     */
+    public synchronized boolean hasGradientVolume() {
+        return gradients != null;
+    }
 
-            for (int j = 1117; j < CT_z_axis; j++) {
-                short[][] temp = resizeMatrix(volume[j], CT_x_axis, CT_y_axis, (int) (CT_x_axis / 1.3),
-                        (int) (CT_y_axis / 1.3));
-                volume[j] = centreContent(temp, CT_x_axis, CT_y_axis);
-            }
-        }
+    /**
+     * Gets the length of the volumes X axis.
+     * @return The volumes X axis length.
+     */
+    public int getCT_x_axis() {
+        return CT_x_axis;
     }
 
     /**
-     * Resizes a matrix to a specified size.
-     * Uses nearest neighbor.
-     * @param matrix The matrix to resize.
-     * @param width The width of the matrix to resize.
-     * @param height The height of the matrix to resize.
-     * @param resizeW The width to resize to.
-     * @param resizeH The height to resize to.
-     * @return Th matrix of the new size.
+     * Gets the length of the volumes Y axis.
+     * @return The volumes Y axis length.
      */
-    private short[][] resizeMatrix(short[][] matrix, int width, int height, int resizeW, int resizeH) {
-        short[][] resized = createMatrix(resizeW, resizeH);
-        for (int x = 0; x < resizeW; x++) {
-            for (int y = 0; y < resizeH; y++) {
-                int nearestX = (int) (x * (float) width  / resizeW);
-                int nearestY = (int) (y * (float) height / resizeH);
-                resized[x][y] = matrix[nearestX][nearestY];
-            }
-        }
-        return resized;
-    }
-
-    /**
-     * Centres a matrix within a larger container matrix of specified size.
-     * @param content The smaller matrix to centre.
-     * @param containerWidth The width of the container.
-     * @param containerHeight The height of the container.
-     * @return The new matrix.
-     */
-    private short[][] centreContent(short[][] content, int containerWidth, int containerHeight) {
-        short[][] output = createMatrix(containerWidth, containerHeight);
-        int length = content.length;
-        int centreBegins = ((getCT_x_axis() - content.length) / 2);
-        int xCentre = 0;
-        for ( int x = 0; x < containerWidth; x++) {
-            int yCentre = 0;
-            for ( int y = 0; y < containerHeight; y++) {
-                if (y >  centreBegins && y < centreBegins + length ){
-                    output[x][y] = content[xCentre][yCentre];
-                    yCentre++;
-                }
-            }
-            if (x > centreBegins && x < centreBegins + length){
-                xCentre++;
-            }
-        }
-        return output;
+    public int getCT_y_axis() {
+        return CT_y_axis;
     }
 
     /**
-     * Creates a matrix of a specified size, and sets all values to default to
-     * -1024, the hounsfield value of air.
-     * @param width the width of the matrix to create.
-     * @param height the height of the matrix to create.
-     * @return a matrix of specified height.
+     * Gets the length of the volumes Z axis.
+     * @return The volumes Z axis length.
      */
-    private short[][] createMatrix (int width, int height){
-        short[][] matrix = new short[width][height];
-        for (int x = 0; x < width; ++x) {
-            for (int y = 0; y < height; ++y) {
-                matrix[x][y] = -1024;
-            }
-        }
-        return matrix;
+    public int getCT_z_axis() {
+        return CT_z_axis;
     }
 }
@@ -0,0 +1,232 @@
+package models;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Reads and writes the native volume file format. Unlike a raw scan, a volume file describes itself and
+ * holds everything that would otherwise be found by scanning the scan when it is loaded:
+ * a header with the dimensions, byte order, layout, minimum, maximum and histogram of the volume,
+ * followed by sections for the voxels (already re-sampled, if the scan needed it), the brick grid of
+ * minimums and maximums, and optionally the precomputed normals. The header is big-endian, while the
+ * sections are written in the native byte order recorded in the header. Sections start on a page
+ * boundary, so the voxels and normals are memory-mapped straight from the file when it is read.
+ * @author Josh Codd.
+ */
+public class VolumeFile {
+    public static final String EXTENSION = ".ctv";
+    public static final int RESAMPLED = 1;
+    private static final long MAGIC = 0x4354564F4C554D45L; // "CTVOLUME"
+    private static final int VERSION = 1;
+    private static final int VOXELS = 0;
+    private static final int BRICKS = 1;
+    private static final int GRADIENTS = 2;
+    private static final int SECTIONS = 3;
+    private static final int SECTION_TABLE = 32;
+    private static final int HISTOGRAM = SECTION_TABLE + SECTIONS * 16;
+    private static final int HEADER_SIZE = HISTOGRAM + TransferFunctionTable.ENTRIES * 8;
+    private static final int ALIGNMENT = 4096;
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Writes a volume to a volume file.
+     * @param volume The volume to write.
+     * @param file The file to write to, which is replaced if it exists.
+     * @param flags Facts about the volume to record, e.g. RESAMPLED.
+     * @param hasGradients If the precomputed normals of the volume should be stored, building them if needed.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(Volume volume, File file, int flags, boolean hasGradients) throws IOException {
+        VoxelLayout layout = volume.getLayout();
+        BrickGrid bricks = volume.getBrickGrid();
+        ByteOrder order = ByteOrder.nativeOrder();
+        long[] offsets = new long[SECTIONS];
+        long[] lengths = new long[SECTIONS];
+        lengths[VOXELS] = layout.size() * 2;
+        lengths[BRICKS] = 4 + bricks.size() * 4L;
+        lengths[GRADIENTS] = hasGradients ? layout.size() * 2 : 0;
+        long position = align(HEADER_SIZE);
+        for (int section = 0; section < SECTIONS; section++) {
+            offsets[section] = lengths[section] == 0 ? 0 : position;
+            position = align(position + lengths[section]);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            buffer.putLong(MAGIC).putInt(VERSION);
+            buffer.putInt(volume.getCT_x_axis()).putInt(volume.getCT_y_axis()).putInt(volume.getCT_z_axis());
+            buffer.put((byte) (order == ByteOrder.BIG_ENDIAN ? 1 : 0)).put((byte) layout.getKind());
+            buffer.put((byte) flags).put((byte) 0);
+            buffer.putShort(volume.getMin()).putShort(volume.getMax());
+            for (int section = 0; section < SECTIONS; section++) {
+                buffer.putLong(offsets[section]).putLong(lengths[section]);
+            }
+            for (long count : volume.getHistogram()) {
+                buffer.putLong(count);
+            }
+            flush(channel, buffer, 0);
+            buffer.order(order);
+
+            long written = offsets[VOXELS];
+            for (long index = 0; index < layout.size(); index++) {
+                buffer.putShort(volume.getVoxel(index));
+                if (!buffer.hasRemaining()) {
+                    written = flush(channel, buffer, written);
+                }
+            }
+            flush(channel, buffer, written);
+
+            written = offsets[BRICKS];
+            buffer.putInt(1); // The number of levels of bricks. Only the finest level is used for skipping.
+            for (int brick = 0; brick < bricks.size(); brick++) {
+                buffer.putShort(bricks.getMin(brick)).putShort(bricks.getMax(brick));
+                if (buffer.remaining() < 4) {
+                    written = flush(channel, buffer, written);
+                }
+            }
+            flush(channel, buffer, written);
+
+            if (hasGradients) {
+                GradientVolume gradients = volume.getGradientVolume();
+                written = offsets[GRADIENTS];
+                for (long index = 0; index < layout.size(); index++) {
+                    buffer.putShort(gradients.getNormal(index));
+                    if (!buffer.hasRemaining()) {
+                        written = flush(channel, buffer, written);
+                    }
+                }
+                flush(channel, buffer, written);
+            }
+        }
+    }
+
+    /**
+     * Reads a volume file. The voxels and normals are memory-mapped rather than read, and nothing is
+     * scanned or re-sampled.
+     * @param file The file to read.
+     * @return The volume.
+     * @throws IOException If the file is not a volume file or could not be read.
+     */
+    public static Volume read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Reads a volume file, reporting progress as each section is mapped or read.
+     * @param file The file to read.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @return The volume.
+     * @throws IOException If the file is not a volume file or could not be read.
+     * @throws CancellationException If the load was cancelled.
+     */
+    public static Volume read(File file, LoadProgress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new EOFException("File is too small to be a volume file.");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+                throw new IOException("Not a volume file: " + file);
+            }
+            int x = header.getInt(12), y = header.getInt(16), z = header.getInt(20);
+            ByteOrder order = header.get(24) == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            VoxelLayout layout = VoxelLayout.create(header.get(25), x, y, z);
+            short min = header.getShort(28), max = header.getShort(30);
+            long[] offsets = new long[SECTIONS];
+            long[] lengths = new long[SECTIONS];
+            for (int section = 0; section < SECTIONS; section++) {
+                offsets[section] = header.getLong(SECTION_TABLE + section * 16);
+                lengths[section] = header.getLong(SECTION_TABLE + section * 16 + 8);
+                if (offsets[section] + lengths[section] > channel.size()) {
+                    throw new EOFException("Volume file ends prematurely.");
+                }
+            }
+            long[] histogram = new long[TransferFunctionTable.ENTRIES];
+            header.position(HISTOGRAM);
+            header.asLongBuffer().get(histogram);
+            report(progress, 0, HEADER_SIZE);
+
+            Volume volume = new Volume(x, y, z);
+            VoxelBuffer voxels = VoxelBuffer.map(channel, order, offsets[VOXELS], layout.size(), false);
+            report(progress, z, lengths[VOXELS]);
+            GradientVolume gradients = lengths[GRADIENTS] == 0 ? null
+                    : new GradientVolume(VoxelBuffer.map(channel, order, offsets[GRADIENTS], layout.size(), false));
+            report(progress, 0, lengths[GRADIENTS]);
+            BrickGrid bricks = null;
+            if (lengths[BRICKS] > 0) {
+                ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, offsets[BRICKS], lengths[BRICKS])
+                        .order(order);
+                int count = (int) ((lengths[BRICKS] - 4) / 4);
+                short[] brickMin = new short[count];
+                short[] brickMax = new short[count];
+                for (int brick = 0; brick < count; brick++) {
+                    brickMin[brick] = section.getShort(4 + brick * 4);
+                    brickMax[brick] = section.getShort(4 + brick * 4 + 2);
+                }
+                bricks = new BrickGrid(x, y, z, brickMin, brickMax);
+            }
+            report(progress, 0, lengths[BRICKS]);
+            volume.setContents(voxels, layout, min, max, histogram, bricks, gradients);
+            return volume;
+        }
+    }
+
+    /**
+     * Checks if a file is named as a volume file.
+     * @param filename The name of the file.
+     * @return If the file has the volume file extension.
+     */
+    public static boolean isVolumeFile(String filename) {
+        return filename != null && filename.endsWith(EXTENSION);
+    }
+
+    /**
+     * Reports that part of a volume file has been loaded, first stopping the load if it has been cancelled.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @param slices The number of slices of voxels just loaded.
+     * @param bytes The number of bytes of the file just loaded.
+     * @throws CancellationException If the load was cancelled.
+     */
+    private static void report(LoadProgress progress, int slices, long bytes) {
+        if (progress == null) {
+            return;
+        }
+        if (progress.isCancelled()) {
+            throw new CancellationException("Loading was cancelled.");
+        }
+        progress.slicesLoaded(slices, bytes);
+    }
+
+    /**
+     * Writes the contents of a buffer to a file and empties the buffer.
+     * @param channel The file to write to.
+     * @param buffer The buffer to write.
+     * @param position The position in the file to write at.
+     * @return The position following the written bytes.
+     * @throws IOException If the file could not be written.
+     */
+    private static long flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    /**
+     * Rounds a position in the file up to the next section boundary.
+     * @param position The position in bytes.
+     * @return The aligned position.
+     */
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,207 @@
+package models;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Decodes a range of slices from a raw file into a volume in parallel, and gathers the statistics of
+ * those slices in the same pass. The range is split in half until it is small enough for one thread,
+ * each thread reads large blocks into a buffer and decodes them as shorts of the file's byte order,
+ * then the partial statistics of each half are merged.
+ * If no file is given, the statistics of slices already within the volume are gathered instead.
+ * Slices that need re-sampling are re-sampled by the same thread straight after they are decoded or
+ * gathered, while the statistics are always those of the voxels as read. Progress is reported after
+ * every block, and a cancelled load stops before reading the next one.
+ * @author Josh Codd.
+ */
+@SuppressWarnings("serial")
+public class VolumeLoadTask extends RecursiveTask<VolumeStatistics> {
+    private static final int READ_SIZE = 1 << 22;
+    private final FileChannel channel;
+    private final ByteOrder order;
+    private final VoxelBuffer volume;
+    private final VisibleHumanResampler resampler;
+    private final LoadProgress progress;
+    private final int sliceLength;
+    private final int firstSlice;
+    private final int lastSlice;
+    private final int threshold;
+
+    /**
+     * Creates a task to load a range of slices.
+     * @param channel The file to read from, or null to only gather statistics.
+     * @param order The byte order of the file.
+     * @param volume The volume to decode into.
+     * @param resampler The re-sampler to apply to slices, or null if the volume is not re-sampled.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @param sliceLength The number of voxels in a slice.
+     * @param firstSlice The first slice to load.
+     * @param lastSlice The slice after the last slice to load.
+     * @param threshold The number of slices a single thread loads.
+     */
+    public VolumeLoadTask(FileChannel channel, ByteOrder order, VoxelBuffer volume,
+                          VisibleHumanResampler resampler, LoadProgress progress, int sliceLength, int firstSlice,
+                          int lastSlice, int threshold) {
+        this.channel = channel;
+        this.order = order;
+        this.volume = volume;
+        this.resampler = resampler;
+        this.progress = progress;
+        this.sliceLength = sliceLength;
+        this.firstSlice = firstSlice;
+        this.lastSlice = lastSlice;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Creates a task to load part of the range of slices of another task.
+     * @param parent The task being split.
+     * @param firstSlice The first slice to load.
+     * @param lastSlice The slice after the last slice to load.
+     */
+    private VolumeLoadTask(VolumeLoadTask parent, int firstSlice, int lastSlice) {
+        this(parent.channel, parent.order, parent.volume, parent.resampler, parent.progress, parent.sliceLength,
+                firstSlice, lastSlice, parent.threshold);
+    }
+
+    /**
+     * Loads a range of slices of a volume using the common fork-join pool.
+     * @param channel The file to read from, or null to only gather statistics.
+     * @param order The byte order of the file.
+     * @param volume The volume to decode into.
+     * @param resampler The re-sampler to apply to slices, or null if the volume is not re-sampled.
+     * @param progress The receiver of the progress of the load, or null if it is not reported.
+     * @param sliceLength The number of voxels in a slice.
+     * @param firstSlice The first slice to load.
+     * @param lastSlice The slice after the last slice to load.
+     * @return The statistics of the range.
+     * @throws IOException If the file ends prematurely or could not be read.
+     * @throws CancellationException If the load was cancelled.
+     */
+    public static VolumeStatistics load(FileChannel channel, ByteOrder order, VoxelBuffer volume,
+                                        VisibleHumanResampler resampler, LoadProgress progress,
+                                        int sliceLength, int firstSlice, int lastSlice) throws IOException {
+        int threshold = Math.max(1, (lastSlice - firstSlice) / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        try {
+            return ForkJoinPool.commonPool().invoke(new VolumeLoadTask(channel, order, volume, resampler,
+                    progress, sliceLength, firstSlice, lastSlice, threshold));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Loads the range of slices, splitting the work if the range is too large.
+     * @return The statistics of the range.
+     */
+    @Override
+    protected VolumeStatistics compute() {
+        if (lastSlice - firstSlice <= threshold) {
+            try {
+                return channel == null ? gather() : decode();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int middle = (firstSlice + lastSlice) >>> 1;
+        VolumeLoadTask first = new VolumeLoadTask(this, firstSlice, middle);
+        VolumeLoadTask second = new VolumeLoadTask(this, middle, lastSlice);
+        first.fork();
+        VolumeStatistics statistics = second.compute();
+        return statistics.merge(first.join());
+    }
+
+    /**
+     * Reads and decodes the range of slices from file.
+     * @return The statistics of the range.
+     * @throws IOException If the file ends prematurely or could not be read.
+     */
+    private VolumeStatistics decode() throws IOException {
+        VolumeStatistics statistics = new VolumeStatistics();
+        int slicesPerRead = Math.max(1, READ_SIZE / (sliceLength * 2));
+        ByteBuffer bytes = ByteBuffer.allocateDirect(Math.min(slicesPerRead, lastSlice - firstSlice)
+                * sliceLength * 2);
+        short[] loaded = resampler == null ? null : new short[sliceLength];
+        short[] resampled = resampler == null ? null : new short[sliceLength];
+
+        for (int slice = firstSlice; slice < lastSlice; slice += slicesPerRead) {
+            checkCancelled();
+            int count = Math.min(slicesPerRead, lastSlice - slice);
+            long index = (long) slice * sliceLength;
+            bytes.clear().limit(count * sliceLength * 2);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, index * 2 + bytes.position()) < 0) {
+                    throw new EOFException("File is smaller than the specified volume.");
+                }
+            }
+            bytes.flip();
+
+            ShortBuffer voxels = bytes.order(order).asShortBuffer();
+            for (int i = 0; i < voxels.limit(); i++) {
+                statistics.add(voxels.get(i));
+            }
+            if (resampler == null) {
+                volume.put(index, voxels);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    ShortBuffer sliceVoxels = voxels.slice(i * sliceLength, sliceLength);
+                    if (resampler.isResampled(slice + i)) {
+                        sliceVoxels.get(loaded);
+                        resampler.resample(slice + i, loaded, resampled);
+                        volume.put(index + (long) i * sliceLength, resampled, 0, sliceLength);
+                    } else {
+                        volume.put(index + (long) i * sliceLength, sliceVoxels);
+                    }
+                }
+            }
+            if (progress != null) {
+                progress.slicesLoaded(count, count * sliceLength * 2L);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Gathers the statistics of the range of slices already within the volume, re-sampling them in place.
+     * @return The statistics of the range.
+     */
+    private VolumeStatistics gather() {
+        VolumeStatistics statistics = new VolumeStatistics();
+        short[] loaded = new short[sliceLength];
+        short[] resampled = resampler == null ? null : new short[sliceLength];
+        for (int slice = firstSlice; slice < lastSlice; slice++) {
+            checkCancelled();
+            long index = (long) slice * sliceLength;
+            volume.get(index, loaded, 0, sliceLength);
+            for (short voxel : loaded) {
+                statistics.add(voxel);
+            }
+            if (resampler != null && resampler.isResampled(slice)) {
+                resampler.resample(slice, loaded, resampled);
+                volume.put(index, resampled, 0, sliceLength);
+            }
+            if (progress != null) {
+                progress.slicesLoaded(1, sliceLength * 2L);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops the load if it has been cancelled.
+     * @throws CancellationException If the load was cancelled.
+     */
+    private void checkCancelled() {
+        if (progress != null && progress.isCancelled()) {
+            throw new CancellationException("Loading was cancelled.");
+        }
+    }
+}
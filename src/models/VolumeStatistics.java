@@ -0,0 +1,59 @@
+package models;
+
+/**
+ * The minimum, maximum and histogram of the voxels within a volume or part of a volume.
+ * @author Josh Codd.
+ */
+public class VolumeStatistics {
+    private final long[] histogram = new long[1 << 16];
+    private short min = Short.MAX_VALUE;
+    private short max = Short.MIN_VALUE;
+
+    /**
+     * Adds a voxel to the statistics.
+     * @param voxel The voxel to add.
+     */
+    public void add(short voxel) {
+        if (voxel < min) min = voxel;
+        if (voxel > max) max = voxel;
+        histogram[voxel - Short.MIN_VALUE]++;
+    }
+
+    /**
+     * Adds the statistics of another part of the volume to these.
+     * @param other The statistics to merge in.
+     * @return These statistics.
+     */
+    public VolumeStatistics merge(VolumeStatistics other) {
+        min = (short) Math.min(min, other.min);
+        max = (short) Math.max(max, other.max);
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+        return this;
+    }
+
+    /**
+     * Gets the minimum voxel.
+     * @return The minimum value.
+     */
+    public short getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the maximum voxel.
+     * @return The maximum value.
+     */
+    public short getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the number of voxels of every 16-bit value, ordered from Short.MIN_VALUE.
+     * @return The histogram.
+     */
+    public long[] getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,175 @@
+package models;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.io.IOException;
+
+/**
+ * A contiguous block of 16-bit voxels stored outside of the Java heap.
+ * A single NIO buffer can only address 2^31 bytes, so the voxels are split over fixed size chunks and
+ * addressed with a long index, allowing volumes larger than that limit.
+ * @author Josh Codd.
+ */
+public class VoxelBuffer implements VoxelStore {
+    private static final int CHUNK_SHIFT = 28;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private final ShortBuffer[] chunks;
+    private final long length;
+
+    /**
+     * Creates a voxel buffer from already allocated chunks.
+     * @param chunks The chunks, each except the last holding exactly CHUNK_SIZE voxels.
+     * @param length The total number of voxels.
+     */
+    private VoxelBuffer(ShortBuffer[] chunks, long length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    /**
+     * Allocates a direct (off-heap) buffer large enough to hold the specified number of voxels.
+     * @param length The number of voxels.
+     * @return The allocated buffer.
+     */
+    public static VoxelBuffer allocate(long length) {
+        ShortBuffer[] chunks = new ShortBuffer[chunkCount(length)];
+        for (int i = 0; i < chunks.length; i++) {
+            int size = (int) Math.min(CHUNK_SIZE, length - ((long) i << CHUNK_SHIFT));
+            chunks[i] = ByteBuffer.allocateDirect(size * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        }
+        return new VoxelBuffer(chunks, length);
+    }
+
+    /**
+     * Memory-maps a file of raw 16-bit voxels. Voxels are served straight from the mapping, so the file is
+     * paged in lazily by the operating system rather than copied onto the heap.
+     * @param channel The channel of the file to map.
+     * @param order The byte order of the voxels in the file.
+     * @param length The number of voxels to map.
+     * @param isWritable If the mapping can be written to. Writes are private and never reach the file.
+     * @return The mapped buffer.
+     * @throws IOException If the file could not be mapped.
+     */
+    public static VoxelBuffer map(FileChannel channel, ByteOrder order, long length, boolean isWritable)
+            throws IOException {
+        return map(channel, order, 0, length, isWritable);
+    }
+
+    /**
+     * Memory-maps a run of raw 16-bit voxels that starts part way into a file.
+     * @param channel The channel of the file to map.
+     * @param order The byte order of the voxels in the file.
+     * @param start The position in the file, in bytes, of the first voxel.
+     * @param length The number of voxels to map.
+     * @param isWritable If the mapping can be written to. Writes are private and never reach the file.
+     * @return The mapped buffer.
+     * @throws IOException If the file could not be mapped.
+     */
+    public static VoxelBuffer map(FileChannel channel, ByteOrder order, long start, long length,
+                                  boolean isWritable) throws IOException {
+        FileChannel.MapMode mode = isWritable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+        ShortBuffer[] chunks = new ShortBuffer[chunkCount(length)];
+        for (int i = 0; i < chunks.length; i++) {
+            long position = (long) i << CHUNK_SHIFT;
+            int size = (int) Math.min(CHUNK_SIZE, length - position);
+            chunks[i] = channel.map(mode, start + position * 2, size * 2L).order(order).asShortBuffer();
+        }
+        return new VoxelBuffer(chunks, length);
+    }
+
+    /**
+     * Gets the voxel at the specified index.
+     * @param index The index of the voxel.
+     * @return The voxel.
+     */
+    @Override
+    public short get(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    /**
+     * Sets the voxel at the specified index.
+     * @param index The index of the voxel.
+     * @param value The value to set to.
+     */
+    public void put(long index, short value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+
+    /**
+     * Copies a run of voxels out of the buffer.
+     * @param index The index of the first voxel to copy.
+     * @param dst The array to copy into.
+     * @param offset The position in the array to start at.
+     * @param count The number of voxels to copy.
+     */
+    @Override
+    public void get(long index, short[] dst, int offset, int count) {
+        while (count > 0) {
+            ShortBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+            int position = (int) (index & CHUNK_MASK);
+            int run = Math.min(count, chunk.capacity() - position);
+            chunk.duplicate().position(position).get(dst, offset, run);
+            index += run;
+            offset += run;
+            count -= run;
+        }
+    }
+
+    /**
+     * Copies a run of voxels into the buffer.
+     * @param index The index of the first voxel to overwrite.
+     * @param src The array to copy from.
+     * @param offset The position in the array to start at.
+     * @param count The number of voxels to copy.
+     */
+    public void put(long index, short[] src, int offset, int count) {
+        while (count > 0) {
+            ShortBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+            int position = (int) (index & CHUNK_MASK);
+            int run = Math.min(count, chunk.capacity() - position);
+            chunk.duplicate().position(position).put(src, offset, run);
+            index += run;
+            offset += run;
+            count -= run;
+        }
+    }
+
+    /**
+     * Copies the remaining voxels of a buffer into this buffer, converting their byte order if needed.
+     * @param index The index of the first voxel to overwrite.
+     * @param src The buffer to copy from.
+     */
+    public void put(long index, ShortBuffer src) {
+        ShortBuffer remaining = src.duplicate();
+        while (remaining.hasRemaining()) {
+            ShortBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)].duplicate();
+            chunk.position((int) (index & CHUNK_MASK));
+            int run = Math.min(remaining.remaining(), chunk.remaining());
+            ShortBuffer part = remaining.duplicate();
+            part.limit(part.position() + run);
+            chunk.put(part);
+            remaining.position(remaining.position() + run);
+            index += run;
+        }
+    }
+
+    /**
+     * Gets the number of voxels held.
+     * @return The number of voxels.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Calculates how many chunks are needed to hold the specified number of voxels.
+     * @param length The number of voxels.
+     * @return The number of chunks.
+     */
+    private static int chunkCount(long length) {
+        return (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+    }
+}
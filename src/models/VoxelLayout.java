@@ -0,0 +1,197 @@
+package models;
+
+/**
+ * Describes where each voxel of a volume is stored. The position of voxel (x, y, z) is the sum of an offset
+ * for each axis, looked up from a table per axis, so both layouts are addressed the same way.
+ * The linear layout stores voxels slice by slice, then row by row. The bricked layout stores small cubic
+ * bricks of voxels contiguously, ordered along a Z-order (Morton) curve, so that neighbouring voxels along
+ * any axis are usually close in memory and rays from every view get similar locality. The paged layout
+ * groups bricks into larger cubic pages, so that a volume can be read from disk a page at a time.
+ * @author Josh Codd.
+ */
+public class VoxelLayout {
+    public static final int PAGE_SHIFT = 5;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    public static final int PAGE_VOXELS_SHIFT = PAGE_SHIFT * 3;
+    public static final int LINEAR = 0;
+    public static final int BRICKED = 1;
+    public static final int PAGED = 2;
+    private static final int BRICK_VOXELS_SHIFT = BrickGrid.BRICK_SHIFT * 3;
+    private static final int BRICK_MASK = BrickGrid.BRICK_SIZE - 1;
+    private final long[][] offsets;
+    private final long size;
+    private final int kind;
+
+    /**
+     * Creates a layout from its offset tables.
+     * @param offsets The offset of every position along each axis, as numbered by View.
+     * @param size The number of voxels the storage must hold.
+     * @param kind The kind of layout, e.g. LINEAR.
+     */
+    private VoxelLayout(long[][] offsets, long size, int kind) {
+        this.offsets = offsets;
+        this.size = size;
+        this.kind = kind;
+    }
+
+    /**
+     * Creates a layout of the specified kind.
+     * @param kind The kind of layout, LINEAR, BRICKED or PAGED.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @return The layout.
+     */
+    public static VoxelLayout create(int kind, int x, int y, int z) {
+        switch (kind) {
+            case LINEAR:
+                return linear(x, y, z);
+            case BRICKED:
+                return bricked(x, y, z);
+            case PAGED:
+                return paged(x, y, z);
+            default:
+                throw new IllegalArgumentException("Unknown voxel layout " + kind);
+        }
+    }
+
+    /**
+     * Creates a layout that stores voxels slice by slice, then row by row.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @return The linear layout.
+     */
+    public static VoxelLayout linear(int x, int y, int z) {
+        long[] strides = {1, x, (long) x * y};
+        int[] lengths = {x, y, z};
+        long[][] offsets = new long[3][];
+        for (int axis = 0; axis < 3; axis++) {
+            offsets[axis] = new long[lengths[axis]];
+            for (int i = 0; i < lengths[axis]; i++) {
+                offsets[axis][i] = i * strides[axis];
+            }
+        }
+        return new VoxelLayout(offsets, (long) x * y * z, LINEAR);
+    }
+
+    /**
+     * Creates a layout that stores bricks of BrickGrid.BRICK_SIZE voxels cubed contiguously, ordered along
+     * a Z-order curve. The bits of the brick position along each axis are interleaved while that axis still
+     * has bits left, so an axis with fewer bricks does not pad the others out to a cube.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @return The bricked layout.
+     */
+    public static VoxelLayout bricked(int x, int y, int z) {
+        int[] lengths = {x, y, z};
+        int[] bits = new int[3];
+        int maxBits = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            int bricks = (lengths[axis] + BRICK_MASK) >> BrickGrid.BRICK_SHIFT;
+            bits[axis] = 32 - Integer.numberOfLeadingZeros(Math.max(bricks - 1, 0));
+            maxBits = Math.max(maxBits, bits[axis]);
+        }
+
+        // The position of each bit of a brick coordinate within the brick's Morton code.
+        int[][] positions = new int[3][maxBits];
+        int position = 0;
+        for (int bit = 0; bit < maxBits; bit++) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (bit < bits[axis]) {
+                    positions[axis][bit] = position++;
+                }
+            }
+        }
+
+        long[][] offsets = new long[3][];
+        for (int axis = 0; axis < 3; axis++) {
+            offsets[axis] = new long[lengths[axis]];
+            for (int i = 0; i < lengths[axis]; i++) {
+                int brick = i >> BrickGrid.BRICK_SHIFT;
+                long morton = 0;
+                for (int bit = 0; bit < bits[axis]; bit++) {
+                    morton |= (long) ((brick >> bit) & 1) << positions[axis][bit];
+                }
+                offsets[axis][i] = (morton << BRICK_VOXELS_SHIFT)
+                        | ((long) (i & BRICK_MASK) << (axis * BrickGrid.BRICK_SHIFT));
+            }
+        }
+        return new VoxelLayout(offsets, 1L << (position + BRICK_VOXELS_SHIFT), BRICKED);
+    }
+
+    /**
+     * Creates a layout that stores cubic pages of PAGE_SIZE voxels per side contiguously, page after page
+     * along the x axis, then the y axis, then the z axis. Within a page, voxels are in Morton ordered bricks
+     * as in the bricked layout. Pages are the unit in which out-of-core volumes are read from disk.
+     * @param x The length of the x axis.
+     * @param y The length of the y axis.
+     * @param z The length of the z axis.
+     * @return The paged layout.
+     */
+    public static VoxelLayout paged(int x, int y, int z) {
+        VoxelLayout page = bricked(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE);
+        int[] lengths = {x, y, z};
+        long[] pageStrides = new long[3];
+        long pages = 1;
+        for (int axis = 0; axis < 3; axis++) {
+            pageStrides[axis] = pages << PAGE_VOXELS_SHIFT;
+            pages *= (lengths[axis] + PAGE_SIZE - 1) >> PAGE_SHIFT;
+        }
+
+        long[][] offsets = new long[3][];
+        for (int axis = 0; axis < 3; axis++) {
+            offsets[axis] = new long[lengths[axis]];
+            for (int i = 0; i < lengths[axis]; i++) {
+                offsets[axis][i] = (i >> PAGE_SHIFT) * pageStrides[axis]
+                        + page.offsets[axis][i & (PAGE_SIZE - 1)];
+            }
+        }
+        return new VoxelLayout(offsets, pages << PAGE_VOXELS_SHIFT, PAGED);
+    }
+
+    /**
+     * Gets the position in storage of a voxel.
+     * @param x The x location.
+     * @param y The y location.
+     * @param z The z location.
+     * @return The index of the voxel.
+     */
+    public long address(int x, int y, int z) {
+        return offsets[View.X_AXIS][x] + offsets[View.Y_AXIS][y] + offsets[View.Z_AXIS][z];
+    }
+
+    /**
+     * Gets the offset of every position along an axis. These must not be modified.
+     * @param axis The axis, as numbered by View.
+     * @return The offsets of the axis.
+     */
+    public long[] getOffsets(int axis) {
+        return offsets[axis];
+    }
+
+    /**
+     * Gets the number of voxels the storage must hold, including any padding of partial bricks.
+     * @return The storage size.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Checks if this layout is bricked, or paged, rather than linear.
+     * @return If the layout is bricked.
+     */
+    public boolean isBricked() {
+        return kind != LINEAR;
+    }
+
+    /**
+     * Gets the kind of this layout.
+     * @return LINEAR, BRICKED or PAGED.
+     */
+    public int getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,25 @@
+package models;
+
+/**
+ * Somewhere the voxels of a volume are read from, addressed by their index in the volume's layout.
+ * @author Josh Codd.
+ */
+public interface VoxelStore {
+
+    /**
+     * Gets the voxel at the specified index.
+     * @param index The index of the voxel.
+     * @return The voxel.
+     */
+    short get(long index);
+
+    /**
+     * Copies a run of consecutive voxels. The run must lie within a single brick of BrickGrid.BRICK_SIZE
+     * voxels along the x axis, unless the store is laid out linearly.
+     * @param index The index of the first voxel to copy.
+     * @param dst The array to copy into.
+     * @param offset The position in the array to start at.
+     * @param count The number of voxels to copy.
+     */
+    void get(long index, short[] dst, int offset, int count);
+}
@@ -0,0 +1,324 @@
+package tools;
+import models.ArgbImage;
+import models.CTViewer;
+import models.TileScheduler;
+import models.View;
+import models.Volume;
+import models.VolumeFile;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Renders slices, maximum intensity projections and volume renders of a scan to image files, without a
+ * display. Frames are rendered on a pool of threads, each with its own viewer of the shared volume, and
+ * handed to separate writer threads that encode and write them, so that writing overlaps rendering.
+ * At most two frames per render thread wait to be written at once. A throughput summary is printed at
+ * the end.
+ * Usage: java tools.BatchRenderer input [x y z isBigEndian isVH] outputDir [--views top,front,side]
+ * [--slices first:last[:step]] [--mip] [--render TF1,TF2] [--gradient] [--interpolate] [--threads n]
+ * [--writers n] [--format png]
+ * @author Josh Codd.
+ */
+public class BatchRenderer {
+    private final Volume volume;
+    private final File outputDir;
+    private final String format;
+    private final boolean isGradient;
+    private final boolean isInterpolated;
+    private final ExecutorService renderers;
+    private final ExecutorService writers;
+    private final Semaphore queued;
+    private final ThreadLocal<CTViewer> viewers;
+    private final List<Job> jobs = new ArrayList<>();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong pixelBytes = new AtomicLong();
+    private final AtomicLong fileBytes = new AtomicLong();
+
+    /**
+     * A single frame to render and write.
+     */
+    private static class Job {
+        private final View view;
+        private final File file;
+        private final BiConsumer<CTViewer, ArgbImage> renderer;
+
+        /**
+         * Creates a job.
+         * @param view The view the frame is of, which gives its size.
+         * @param file The file to write the frame to.
+         * @param renderer Renders the frame with a viewer into an image.
+         */
+        private Job(View view, File file, BiConsumer<CTViewer, ArgbImage> renderer) {
+            this.view = view;
+            this.file = file;
+            this.renderer = renderer;
+        }
+    }
+
+    /**
+     * Creates a batch renderer.
+     * @param volume The volume to render.
+     * @param outputDir The directory to write images to.
+     * @param format The name of the image format to write, as known by ImageIO.
+     * @param isGradient If volume renders use gradient shading.
+     * @param isInterpolated If gradient shading is interpolated.
+     * @param threads The number of threads to render on.
+     * @param writerThreads The number of threads to encode and write images on.
+     */
+    public BatchRenderer(Volume volume, File outputDir, String format, boolean isGradient, boolean isInterpolated,
+                         int threads, int writerThreads) {
+        this.volume = volume;
+        this.outputDir = outputDir;
+        this.format = format;
+        this.isGradient = isGradient;
+        this.isInterpolated = isInterpolated;
+        this.renderers = Executors.newFixedThreadPool(threads);
+        this.writers = Executors.newFixedThreadPool(writerThreads);
+        this.queued = new Semaphore(threads * 2);
+        this.viewers = ThreadLocal.withInitial(this::createViewer);
+    }
+
+    /**
+     * Runs the batch renderer.
+     * @param args The scan to render, its dimensions, byte order and if it needs re-sampling unless it is
+     *             a volume file, the directory to write images to, and what to render.
+     * @throws Exception If the scan could not be read.
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        boolean isVolumeFile = args.length > 0 && VolumeFile.isVolumeFile(args[0]);
+        int first = isVolumeFile ? 2 : 7;
+        if (args.length < first) {
+            System.err.println("Usage: java tools.BatchRenderer input [x y z isBigEndian isVH] outputDir"
+                    + " [--views top,front,side] [--slices first:last[:step]] [--mip] [--render TF1,TF2]"
+                    + " [--gradient] [--interpolate] [--threads n] [--writers n] [--format png]");
+            System.exit(1);
+        }
+
+        List<View> views = new ArrayList<>(List.of(View.values()));
+        String slices = null;
+        boolean isMip = false;
+        String[] transferFunctions = new String[0];
+        boolean isGradient = false;
+        boolean isInterpolated = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int writerThreads = 1;
+        String format = "png";
+        for (int i = first; i < args.length; i++) {
+            switch (args[i]) {
+                case "--views":
+                    views.clear();
+                    for (String view : args[++i].split(",")) {
+                        views.add(View.valueOf(view.trim().toUpperCase()));
+                    }
+                    break;
+                case "--slices":
+                    slices = args[++i];
+                    break;
+                case "--mip":
+                    isMip = true;
+                    break;
+                case "--render":
+                    transferFunctions = args[++i].split(",");
+                    break;
+                case "--gradient":
+                    isGradient = true;
+                    break;
+                case "--interpolate":
+                    isInterpolated = true;
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--writers":
+                    writerThreads = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--format":
+                    format = args[++i];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+            System.err.println("No image writer for format: " + format);
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        Volume volume;
+        if (isVolumeFile) {
+            volume = VolumeFile.read(new File(args[0]));
+        } else {
+            volume = new Volume(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            volume.ReadData(args[0], Boolean.parseBoolean(args[4]), Boolean.parseBoolean(args[5]), false, false);
+        }
+        System.out.printf("loaded %s in %.1f ms%n", args[0], (System.nanoTime() - start) / 1e6);
+
+        File outputDir = new File(args[first - 1]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Could not create output directory: " + outputDir);
+            System.exit(1);
+        }
+        BatchRenderer batch = new BatchRenderer(volume, outputDir, format, isGradient, isInterpolated, threads,
+                writerThreads);
+        for (View view : views) {
+            if (slices != null) {
+                batch.addSlices(view, slices);
+            }
+            if (isMip) {
+                batch.addMip(view);
+            }
+            for (String transferFunction : transferFunctions) {
+                batch.addVolumeRender(view, transferFunction.trim());
+            }
+        }
+        System.exit(batch.run() ? 0 : 1);
+    }
+
+    /**
+     * Adds a range of slices of a view to be drawn. The range is clamped to the slices of the view.
+     * @param view The view to draw slices of.
+     * @param range The slices to draw as first:last[:step], with last included, or "all".
+     */
+    public void addSlices(View view, String range) {
+        int depth = new CTViewer(volume).getSampler(view).getDepth();
+        String[] parts = range.split(":");
+        int first = range.equals("all") ? 0 : Math.max(0, Integer.parseInt(parts[0]));
+        int last = range.equals("all") ? depth - 1
+                : Math.min(depth - 1, Integer.parseInt(parts.length > 1 ? parts[1] : parts[0]));
+        int step = parts.length > 2 ? Math.max(1, Integer.parseInt(parts[2])) : 1;
+        for (int slice = first; slice <= last; slice += step) {
+            int current = slice;
+            jobs.add(new Job(view, getFile(view, String.format("slice%04d", slice)),
+                    (viewer, image) -> viewer.drawSlice(image, view, current)));
+        }
+    }
+
+    /**
+     * Adds the maximum intensity projection of a view to be drawn.
+     * @param view The view to project.
+     */
+    public void addMip(View view) {
+        jobs.add(new Job(view, getFile(view, "mip"),
+                (viewer, image) -> viewer.maximumIntensityProjection(image, view)));
+    }
+
+    /**
+     * Adds a full quality volume render of a view to be drawn.
+     * @param view The view to render.
+     * @param transferFunction The name of the transfer function to use.
+     */
+    public void addVolumeRender(View view, String transferFunction) {
+        String name = transferFunction + (isGradient ? "_gradient" : "") + (isInterpolated ? "_interpolated" : "");
+        jobs.add(new Job(view, getFile(view, name),
+                (viewer, image) -> viewer.volumeRender(image, view, transferFunction)));
+    }
+
+    /**
+     * Renders and writes every job added, then prints the throughput.
+     * @return If every frame was written.
+     * @throws InterruptedException If interrupted while waiting for the jobs to finish.
+     */
+    public boolean run() throws InterruptedException {
+        long start = System.nanoTime();
+        for (Job job : jobs) {
+            renderers.execute(() -> render(job));
+        }
+        renderers.shutdown();
+        renderers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        writers.shutdown();
+        writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d frames (%d failed) in %.2f s: %.1f frames/s, %.1f MB/s rendered, %.1f MB/s written%n",
+                written.get(), failed.get(), seconds, written.get() / seconds,
+                pixelBytes.get() / 1048576.0 / seconds, fileBytes.get() / 1048576.0 / seconds);
+        return failed.get() == 0;
+    }
+
+    /**
+     * Renders a single frame on the current thread and queues it to be written, waiting if too many frames
+     * are already queued.
+     * @param job The frame to render.
+     */
+    private void render(Job job) {
+        try {
+            CTViewer viewer = viewers.get();
+            ArgbImage image = new ArgbImage(viewer.getSampler(job.view).getWidth(),
+                    viewer.getSampler(job.view).getHeight());
+            job.renderer.accept(viewer, image);
+            pixelBytes.addAndGet(image.getPixels().length * 4L);
+            queued.acquire();
+            writers.execute(() -> write(image, job.file));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Failed to render " + job.file + ": " + e);
+        }
+    }
+
+    /**
+     * Encodes a frame and writes it to a file.
+     * @param image The frame to write.
+     * @param file The file to write to.
+     */
+    private void write(ArgbImage image, File file) {
+        try {
+            BufferedImage encoded = new BufferedImage(image.getWidth(), image.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) encoded.getRaster().getDataBuffer()).getData();
+            System.arraycopy(image.getPixels(), 0, pixels, 0, pixels.length);
+            if (!ImageIO.write(encoded, format, file)) {
+                throw new IOException("No image writer for format: " + format);
+            }
+            fileBytes.addAndGet(file.length());
+            written.incrementAndGet();
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            System.err.println("Failed to write " + file + ": " + e);
+        } finally {
+            queued.release();
+        }
+    }
+
+    /**
+     * Creates the viewer used by a single render thread. Volume renders are tiled on a single thread
+     * of their own, as the frames are already spread over the pool, and nothing is kept between frames.
+     * @return The viewer.
+     */
+    private CTViewer createViewer() {
+        CTViewer viewer = new CTViewer(volume);
+        viewer.setIncrementalRendering(false);
+        viewer.setTiling(TileScheduler.DEFAULT_TILE_SIZE, 1);
+        viewer.setProgressive(false);
+        viewer.setGradientShading(isGradient);
+        viewer.setGradientInterpolation(isInterpolated);
+        return viewer;
+    }
+
+    /**
+     * Gets the file to write a frame of a view to.
+     * @param view The view the frame is of.
+     * @param name The name of the frame within the view.
+     * @return The file.
+     */
+    private File getFile(View view, String name) {
+        return new File(outputDir, view.name().toLowerCase() + "_" + name + "." + format);
+    }
+}
@@ -0,0 +1,44 @@
+package tools;
+import models.Volume;
+import models.VolumeFile;
+import java.io.File;
+
+/**
+ * Converts a raw, headerless scan into a volume file, so that it can later be loaded without being
+ * scanned for its statistics or re-sampled.
+ * Usage: java tools.VolumeConverter input x y z isBigEndian isVH output [--bricked] [--gradients]
+ * @author Josh Codd.
+ */
+public class VolumeConverter {
+
+    /**
+     * Runs the converter.
+     * @param args The scan to convert, its dimensions and byte order, if it needs re-sampling, the file to
+     *             write and optionally if the voxels should be bricked and the normals stored.
+     * @throws Exception If the scan could not be read or the volume file written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 7) {
+            System.err.println("Usage: java tools.VolumeConverter input x y z isBigEndian isVH output"
+                    + " [--bricked] [--gradients]");
+            System.exit(1);
+        }
+        boolean isVH = Boolean.parseBoolean(args[5]);
+        boolean isBricked = false;
+        boolean hasGradients = false;
+        for (int i = 7; i < args.length; i++) {
+            isBricked |= args[i].equals("--bricked");
+            hasGradients |= args[i].equals("--gradients");
+        }
+
+        long start = System.nanoTime();
+        Volume volume = new Volume(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]));
+        volume.ReadData(args[0], Boolean.parseBoolean(args[4]), isVH, false, isBricked);
+        File output = new File(args[6]);
+        VolumeFile.write(volume, output, isVH ? VolumeFile.RESAMPLED : 0, hasGradients);
+        System.out.printf("wrote %s (%,d bytes) in %.1f ms%n", output, output.length(),
+                (System.nanoTime() - start) / 1e6);
+        System.exit(0);
+    }
+}
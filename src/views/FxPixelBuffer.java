@@ -0,0 +1,57 @@
+package views;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import models.PixelBuffer;
+
+/**
+ * Lets the viewer draw into a JavaFX image.
+ * @author Josh Codd.
+ */
+public class FxPixelBuffer implements PixelBuffer {
+    private final WritableImage image;
+
+    /**
+     * Creates a buffer drawing into an image.
+     * @param image The image to draw into.
+     */
+    public FxPixelBuffer(WritableImage image) {
+        this.image = image;
+    }
+
+    /**
+     * Gets the width of the image.
+     * @return The width in pixels.
+     */
+    @Override
+    public int getWidth() {
+        return (int) image.getWidth();
+    }
+
+    /**
+     * Gets the height of the image.
+     * @return The height in pixels.
+     */
+    @Override
+    public int getHeight() {
+        return (int) image.getHeight();
+    }
+
+    /**
+     * Sets every pixel of the image.
+     * @param pixels The opaque ARGB pixels, row by row. Only the first width * height are used.
+     */
+    @Override
+    public void setPixels(int[] pixels) {
+        int width = getWidth();
+        image.getPixelWriter().setPixels(0, 0, width, getHeight(), PixelFormat.getIntArgbInstance(), pixels, 0,
+                width);
+    }
+
+    /**
+     * Gets the image drawn into.
+     * @return The image.
+     */
+    public WritableImage getImage() {
+        return image;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Objects;
  * @author Josh Codd.
  */
 public class Viewer {
+    private ViewerController controller;
 
     /**
      * Creates and displays a viewer using the specified ct viewer.
@@ -21,7 +22,7 @@ public class Viewer {
      * @param ctViewer The viewer to display.
      */
     public Viewer(Stage stage, CTViewer ctViewer){
-        ViewerController controller = new ViewerController();
+        controller = new ViewerController();
         try {
             FXMLLoader loader = new FXMLLoader();
             Parent root = loader.load(Objects.requireNonNull(getClass().getClassLoader()
@@ -54,7 +55,7 @@ public class Viewer {
      * @param menu The menu to display.
      */
     public Viewer(Stage stage, Parent menu){
-        ViewerController controller = new ViewerController();
+        controller = new ViewerController();
         try {
             FXMLLoader loader = new FXMLLoader();
             Parent root = loader.load(Objects.requireNonNull(getClass().getClassLoader()
@@ -78,4 +79,12 @@ public class Viewer {
         controller.sliderValueStyle(controller.getOpacitySlider());
         controller.getMidSlideButton().fire();
     }
+
+    /**
+     * Gets the controller for this viewer.
+     * @return The controller of this viewer.
+     */
+    public ViewerController getController() {
+        return controller;
+    }
 }